@@ -1,101 +1,186 @@
 package ru.ifmo.rain.bandarchuk.set;
 
-import java.util.AbstractList;
 import java.util.AbstractSet;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
-import java.util.List;
 import java.util.NavigableSet;
 import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.SortedSet;
-import java.util.TreeSet;
 
 public class ArraySet<E> extends AbstractSet<E> implements NavigableSet<E> {
 
   private static final String UNSUPPORTED_OPERATION_EXCEPTION_MESSAGE = "The object is immutable";
 
-  private static final int DONT_MOVE = 0;
-  private static final int MOVE_LEFT = -1;
-  private static final int MOVE_RIGHT = 1;
-
-  private final int size;
-  private final List<E> elements;
+  private static final Object[] EMPTY = new Object[0];
+
+  /**
+   * Collections of at least this size are sorted with {@link Arrays#parallelSort}
+   */
+  private static final int PARALLEL_SORT_THRESHOLD = 1 << 16;
+
+  /**
+   * Merges gallop through the larger set if it is at least this many times larger than the other one
+   */
+  private static final int GALLOP_RATIO = 8;
+
+  /**
+   * Merged arrays are trimmed if they are at least this many times larger than the result
+   */
+  private static final int TRIM_RATIO = 2;
+
+  private static final Comparator<Comparable<Object>> NATURAL_ORDER = Comparator.naturalOrder();
+  private static final Comparator<Comparable<Object>> REVERSE_NATURAL_ORDER = Collections.reverseOrder(NATURAL_ORDER);
+
+  private static final int ONLY_FIRST = 1;
+  private static final int ONLY_SECOND = 2;
+  private static final int BOTH = 4;
+
+  /**
+   * Elements sorted by {@link #comparator}, shared by all views of the set.
+   * A view is the window {@code [from, to)} of the array, iterated backwards if {@link #reversed}.
+   */
+  private final E[] elements;
+  private final int from;
+  private final int to;
+  private final boolean reversed;
   private final Comparator<? super E> comparator;
-  private NavigableSet<E> descending = null;
 
+  @SuppressWarnings("unchecked")
   public ArraySet() {
-    size = 0;
-    elements = Collections.emptyList();
-    comparator = null;
+    this((E[]) EMPTY, 0, 0, null, false);
   }
 
   public ArraySet(Collection<? extends E> collection) {
-    this(collection, null, true);
+    this(collection, null);
   }
 
+  @SuppressWarnings("unchecked")
   public ArraySet(Collection<? extends E> collection, Comparator<? super E> comparator) {
-    this(collection, comparator, true);
+    this.comparator = comparator;
+    this.elements = (E[]) collection.toArray();
+    this.from = 0;
+    this.to = isSortedBy(collection, comparator) ? elements.length : sortDistinct(elements, comparator);
+    this.reversed = false;
   }
 
-  private ArraySet(Collection<? extends E> collection, Comparator<? super E> comparator, boolean needSort) {
-    this.comparator = comparator;
+  private static boolean isSortedBy(Collection<?> collection, Comparator<?> comparator) {
+    return collection instanceof SortedSet && isSameOrder(((SortedSet<?>) collection).comparator(), comparator);
+  }
+
+  /**
+   * @return whether the comparators are equal, treating {@link Comparator#naturalOrder()} as {@code null}
+   * and its reverse as {@link Collections#reverseOrder()}
+   */
+  private static boolean isSameOrder(Comparator<?> first, Comparator<?> second) {
+    return Objects.equals(normalize(first), normalize(second));
+  }
+
+  private static Comparator<?> normalize(Comparator<?> comparator) {
+    if (NATURAL_ORDER.equals(comparator)) {
+      return null;
+    }
+    if (REVERSE_NATURAL_ORDER.equals(comparator)) {
+      return Collections.reverseOrder();
+    }
+    return comparator;
+  }
 
-    if (needSort) {
-      TreeSet<E> sortedSet = new TreeSet<>(comparator);
-      sortedSet.addAll(collection);
-      this.elements = Collections.unmodifiableList(new ArrayList<>(sortedSet));
+  /**
+   * Stably sorts the array and moves the first of every run of equal elements to its beginning,
+   * as a {@link java.util.TreeSet} would keep them
+   *
+   * @return number of distinct elements
+   */
+  private static <E> int sortDistinct(E[] elements, Comparator<? super E> comparator) {
+    if (elements.length >= PARALLEL_SORT_THRESHOLD) {
+      Arrays.parallelSort(elements, comparator);
     } else {
-      this.elements = new ArrayList<>(collection);
+      Arrays.sort(elements, comparator);
+    }
+    if (elements.length == 1) {
+      // the sort compares nothing, check the element is comparable as a tree would
+      compare(comparator, elements[0], elements[0]);
     }
+    int size = 0;
+    for (int i = 0; i < elements.length; i++) {
+      if (size == 0 || compare(comparator, elements[size - 1], elements[i]) != 0) {
+        elements[size++] = elements[i];
+      }
+    }
+    Arrays.fill(elements, size, elements.length, null);
+    return size;
+  }
 
-    this.size = this.elements.size();
+  @SuppressWarnings("unchecked")
+  private static <E> int compare(Comparator<? super E> comparator, E a, E b) {
+    return comparator == null ? ((Comparable<? super E>) a).compareTo(b) : comparator.compare(a, b);
   }
 
-  private ArraySet(List<E> collection, Comparator<? super E> comparator) {
-    this.elements = collection;
+  private ArraySet(E[] elements, int from, int to, Comparator<? super E> comparator, boolean reversed) {
+    this.elements = elements;
+    this.from = from;
+    this.to = to;
     this.comparator = comparator;
-    this.size = this.elements.size();
+    this.reversed = reversed;
   }
 
   private boolean isValidIndex(int index) {
-    return index >= 0 && index < size;
+    return index >= from && index < to;
   }
 
-  private int targetIndex(E target) {
-    return targetIndex(target, DONT_MOVE, DONT_MOVE);
+  /**
+   * @return index of the target in the window, or {@code -(insertion point) - 1} if it is absent
+   */
+  private int search(E target) {
+    return Arrays.binarySearch(elements, from, to, target, comparator);
   }
 
-  private int targetIndex(E target, int addFoundEqual, int addNotFoundEqual) {
-    int index = Collections.binarySearch(elements, target, comparator);
+  private int ceilingIndex(E target) {
+    int index = search(target);
+    return index >= 0 ? index : -index - 1;
+  }
+
+  private int higherIndex(E target) {
+    int index = search(target);
+    return index >= 0 ? index + 1 : -index - 1;
+  }
+
+  private int floorIndex(E target) {
+    int index = search(target);
+    return index >= 0 ? index : -index - 2;
+  }
 
-    return index >= 0 ? index + addFoundEqual : -index - 1 - addNotFoundEqual;
+  private int lowerIndex(E target) {
+    int index = search(target);
+    return index >= 0 ? index - 1 : -index - 2;
   }
 
   private E getElementByIndex(int index) {
-    return isValidIndex(index) ? elements.get(index) : null;
+    return isValidIndex(index) ? elements[index] : null;
   }
 
   @Override
   public E lower(E e) {
-    return getElementByIndex(targetIndex(e, MOVE_LEFT, MOVE_RIGHT));
+    return getElementByIndex(reversed ? higherIndex(e) : lowerIndex(e));
   }
 
   @Override
   public E floor(E e) {
-    return getElementByIndex(targetIndex(e, DONT_MOVE, MOVE_RIGHT));
+    return getElementByIndex(reversed ? ceilingIndex(e) : floorIndex(e));
   }
 
   @Override
   public E ceiling(E e) {
-    return getElementByIndex(targetIndex(e));
+    return getElementByIndex(reversed ? floorIndex(e) : ceilingIndex(e));
   }
 
   @Override
   public E higher(E e) {
-    return getElementByIndex(targetIndex(e, MOVE_RIGHT, DONT_MOVE));
+    return getElementByIndex(reversed ? lowerIndex(e) : higherIndex(e));
   }
 
   @Override
@@ -109,47 +194,36 @@ public class ArraySet<E> extends AbstractSet<E> implements NavigableSet<E> {
   }
 
   @Override
+  @SuppressWarnings("unchecked")
   public boolean contains(Object o) {
-    return isValidIndex(targetIndex((E)o));
+    return search((E) o) >= 0;
   }
 
   @Override
   public Iterator<E> iterator() {
-    return Collections.unmodifiableList(elements).iterator();
-  }
+    return new Iterator<E>() {
+      private int index = reversed ? to - 1 : from;
 
-  private class ReversedList<T> extends AbstractList<T> {
-    private final List<T> elements;
-    private boolean reversed;
-
-    ReversedList(List<T> elements) {
-      if (elements instanceof ArraySet.ReversedList) {
-        this.elements = ((ReversedList<T>) elements).elements;
-        reversed = !((ReversedList<T>) elements).reversed;
-      } else {
-        this.elements = elements;
-        reversed = true;
+      @Override
+      public boolean hasNext() {
+        return isValidIndex(index);
       }
-    }
-
-    @Override
-    public T get(int index) {
-      return reversed ? elements.get(size() - 1 - index) : elements.get(index);
-    }
 
-    @Override
-    public int size() {
-      return elements.size();
-    }
+      @Override
+      public E next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        E element = elements[index];
+        index += reversed ? -1 : 1;
+        return element;
+      }
+    };
   }
 
   @Override
   public NavigableSet<E> descendingSet() {
-    if (descending == null) {
-      descending = new ArraySet<>(new ReversedList<>(elements), Collections.reverseOrder(comparator), true);
-    }
-
-    return descending;
+    return new ArraySet<>(elements, from, to, comparator, !reversed);
   }
 
   @Override
@@ -172,27 +246,48 @@ public class ArraySet<E> extends AbstractSet<E> implements NavigableSet<E> {
     throw new UnsupportedOperationException(UNSUPPORTED_OPERATION_EXCEPTION_MESSAGE);
   }
 
+  /**
+   * @return start of the window of elements after the lower bound, in the order of the array
+   */
+  private int lowerBound(E element, boolean inclusive) {
+    return inclusive ? ceilingIndex(element) : higherIndex(element);
+  }
+
+  /**
+   * @return end of the window of elements before the upper bound, in the order of the array
+   */
+  private int upperBound(E element, boolean inclusive) {
+    return (inclusive ? floorIndex(element) : lowerIndex(element)) + 1;
+  }
+
+  private NavigableSet<E> window(int fromIndex, int toIndex) {
+    return new ArraySet<>(elements, fromIndex, Math.max(fromIndex, toIndex), comparator, reversed);
+  }
+
   @Override
   public NavigableSet<E> subSet(E fromElement, boolean fromInclusive, E toElement, boolean toInclusive) {
-    int fromIndex = targetIndex(fromElement, fromInclusive ? DONT_MOVE : MOVE_RIGHT, DONT_MOVE);
-    int toIndex = targetIndex(toElement, toInclusive ? DONT_MOVE : MOVE_LEFT, MOVE_RIGHT) + 1;
-
-    return new ArraySet<>(elements.subList(fromIndex, Math.max(fromIndex, toIndex)), comparator);
+    return reversed
+      ? window(lowerBound(toElement, toInclusive), upperBound(fromElement, fromInclusive))
+      : window(lowerBound(fromElement, fromInclusive), upperBound(toElement, toInclusive));
   }
 
   @Override
   public NavigableSet<E> headSet(E toElement, boolean inclusive) {
-    return subSet(getElementByIndex(0), true, toElement, inclusive);
+    return reversed
+      ? window(lowerBound(toElement, inclusive), to)
+      : window(from, upperBound(toElement, inclusive));
   }
 
   @Override
   public NavigableSet<E> tailSet(E fromElement, boolean inclusive) {
-    return subSet(fromElement, inclusive, getElementByIndex(size - 1), true);
+    return reversed
+      ? window(from, upperBound(fromElement, inclusive))
+      : window(lowerBound(fromElement, inclusive), to);
   }
 
   @Override
   public Comparator<? super E> comparator() {
-    return comparator;
+    return reversed ? Collections.reverseOrder(comparator) : comparator;
   }
 
   @Override
@@ -212,30 +307,169 @@ public class ArraySet<E> extends AbstractSet<E> implements NavigableSet<E> {
 
   @Override
   public E first() {
-    if (size == 0) {
+    if (from == to) {
       throw new NoSuchElementException("No first element in empty " + this);
     }
-    return elements.get(0);
+    return elements[reversed ? to - 1 : from];
   }
 
   @Override
   public E last() {
-    if (size == 0) {
+    if (from == to) {
       throw new NoSuchElementException("No last element in empty " + this);
     }
-    return elements.get(size - 1);
+    return elements[reversed ? from : to - 1];
   }
 
   @Override
   public int size() {
-    return size;
+    return to - from;
+  }
+
+  @Override
+  public Object[] toArray() {
+    return reversed ? super.toArray() : Arrays.copyOfRange(elements, from, to, Object[].class);
+  }
+
+  /**
+   * @return element at the position in the order of the set
+   */
+  private E get(int index) {
+    return elements[reversed ? to - 1 - index : from + index];
+  }
+
+  /**
+   * @return first position at or after {@code index} holding an element not less than the key
+   */
+  private int advance(int index, E key, Comparator<? super E> order, boolean gallop) {
+    if (!gallop) {
+      return index + 1;
+    }
+    int size = size();
+    int step = 1;
+    while (index + step < size && compare(order, get(index + step), key) < 0) {
+      step *= 2;
+    }
+    int low = index + step / 2 + 1;
+    int high = Math.min(index + step, size);
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (compare(order, get(middle), key) < 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Merges two sets ordered by the same comparator, keeping the elements of the given kinds.
+   * Equal elements are taken from the first set, the order is the one of the first set.
+   */
+  private static <E> ArraySet<E> merge(ArraySet<E> first, ArraySet<E> second, int kinds, int capacity) {
+    Comparator<? super E> order = first.comparator();
+    if (!isSameOrder(order, second.comparator())) {
+      throw new IllegalArgumentException("Sets are ordered by different comparators");
+    }
+    int firstSize = first.size();
+    int secondSize = second.size();
+    boolean gallopFirst = firstSize / GALLOP_RATIO >= Math.max(secondSize, 1);
+    boolean gallopSecond = secondSize / GALLOP_RATIO >= Math.max(firstSize, 1);
+
+    @SuppressWarnings("unchecked")
+    E[] result = (E[]) new Object[capacity];
+    int size = 0;
+    int i = 0;
+    int j = 0;
+    while (i < firstSize && j < secondSize) {
+      int comparison = compare(order, first.get(i), second.get(j));
+      if (comparison < 0) {
+        int next = first.advance(i, second.get(j), order, gallopFirst);
+        for (; (kinds & ONLY_FIRST) != 0 && i < next; i++) {
+          result[size++] = first.get(i);
+        }
+        i = next;
+      } else if (comparison > 0) {
+        int next = second.advance(j, first.get(i), order, gallopSecond);
+        for (; (kinds & ONLY_SECOND) != 0 && j < next; j++) {
+          result[size++] = second.get(j);
+        }
+        j = next;
+      } else {
+        if ((kinds & BOTH) != 0) {
+          result[size++] = first.get(i);
+        }
+        i++;
+        j++;
+      }
+    }
+    for (; (kinds & ONLY_FIRST) != 0 && i < firstSize; i++) {
+      result[size++] = first.get(i);
+    }
+    for (; (kinds & ONLY_SECOND) != 0 && j < secondSize; j++) {
+      result[size++] = second.get(j);
+    }
+    if (size <= capacity / TRIM_RATIO) {
+      result = Arrays.copyOf(result, size);
+    }
+    return new ArraySet<>(result, 0, size, order, false);
+  }
+
+  /**
+   * Merges the sets in linear time, galloping through the larger one if their sizes differ a lot
+   *
+   * @param first  first set
+   * @param second second set, ordered by the same comparator
+   * @param <E>    type of elements
+   * @return elements of either set, in their order; equal elements are taken from the first set
+   * @throws IllegalArgumentException if the sets are ordered differently
+   */
+  public static <E> ArraySet<E> union(ArraySet<E> first, ArraySet<E> second) {
+    return merge(first, second, ONLY_FIRST | ONLY_SECOND | BOTH, first.size() + second.size());
+  }
+
+  /**
+   * @param first  first set
+   * @param second second set, ordered by the same comparator
+   * @param <E>    type of elements
+   * @return elements of the first set that are also in the second one
+   * @throws IllegalArgumentException if the sets are ordered differently
+   * @see #union(ArraySet, ArraySet)
+   */
+  public static <E> ArraySet<E> intersect(ArraySet<E> first, ArraySet<E> second) {
+    return merge(first, second, BOTH, Math.min(first.size(), second.size()));
+  }
+
+  /**
+   * @param first  first set
+   * @param second second set, ordered by the same comparator
+   * @param <E>    type of elements
+   * @return elements of the first set that are not in the second one
+   * @throws IllegalArgumentException if the sets are ordered differently
+   * @see #union(ArraySet, ArraySet)
+   */
+  public static <E> ArraySet<E> difference(ArraySet<E> first, ArraySet<E> second) {
+    return merge(first, second, ONLY_FIRST, first.size());
+  }
+
+  /**
+   * @param first  first set
+   * @param second second set, ordered by the same comparator
+   * @param <E>    type of elements
+   * @return elements that are in exactly one of the sets
+   * @throws IllegalArgumentException if the sets are ordered differently
+   * @see #union(ArraySet, ArraySet)
+   */
+  public static <E> ArraySet<E> symmetricDifference(ArraySet<E> first, ArraySet<E> second) {
+    return merge(first, second, ONLY_FIRST | ONLY_SECOND, first.size() + second.size());
   }
 
   @Override
   public String toString() {
     final StringBuilder sb = new StringBuilder("ArraySet{");
-    sb.append("elements=").append(elements);
-    sb.append(", comparator=").append(comparator);
+    sb.append("elements=").append(super.toString());
+    sb.append(", comparator=").append(comparator());
     sb.append('}');
     return sb.toString();
   }
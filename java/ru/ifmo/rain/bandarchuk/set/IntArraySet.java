@@ -0,0 +1,332 @@
+package ru.ifmo.rain.bandarchuk.set;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PrimitiveIterator;
+import java.util.SortedSet;
+
+/**
+ * Immutable navigable set of {@code int} values backed by a sorted {@code int[]}
+ * <br>
+ * Elements are ordered naturally. Besides the {@link NavigableSet} methods, {@link #containsInt(int)},
+ * {@link #ceilingInt(int)} and {@link #floorInt(int)} search without boxing. Subsets and the descending set
+ * are windows over the same array, created in constant time.
+ */
+public class IntArraySet extends AbstractSet<Integer> implements NavigableSet<Integer> {
+
+  private static final String UNSUPPORTED_OPERATION_EXCEPTION_MESSAGE = "The object is immutable";
+  private static final String NO_SUCH_ELEMENT_EXCEPTION_MESSAGE = "No such element in the set";
+
+  private static final int[] EMPTY = new int[0];
+
+  private final int[] elements;
+  private final int from;
+  private final int to;
+  private final boolean reversed;
+
+  public IntArraySet() {
+    this(EMPTY, false);
+  }
+
+  /**
+   * @param values elements of the set in any order, possibly repeated
+   */
+  public IntArraySet(int... values) {
+    this(sorted(values.clone()), false);
+  }
+
+  public IntArraySet(Collection<? extends Integer> collection) {
+    this(sorted(toArray(collection)), false);
+  }
+
+  private IntArraySet(int[] sorted, boolean reversed) {
+    this(sorted, 0, sorted.length, reversed);
+  }
+
+  private IntArraySet(int[] elements, int from, int to, boolean reversed) {
+    this.elements = elements;
+    this.from = from;
+    this.to = to;
+    this.reversed = reversed;
+  }
+
+  private static int[] toArray(Collection<? extends Integer> collection) {
+    if (collection instanceof IntArraySet) {
+      IntArraySet set = (IntArraySet) collection;
+      return Arrays.copyOfRange(set.elements, set.from, set.to);
+    }
+    int[] values = new int[collection.size()];
+    int size = 0;
+    for (Integer value : collection) {
+      values[size++] = value;
+    }
+    return size == values.length ? values : Arrays.copyOf(values, size);
+  }
+
+  /**
+   * Sorts the values and removes repeated ones, reusing the array when possible
+   */
+  private static int[] sorted(int[] values) {
+    Arrays.sort(values);
+    int size = 0;
+    for (int i = 0; i < values.length; i++) {
+      if (size == 0 || values[size - 1] != values[i]) {
+        values[size++] = values[i];
+      }
+    }
+    return size == values.length ? values : Arrays.copyOf(values, size);
+  }
+
+  /**
+   * @return index of the value in the window, or {@code -(insertion point) - 1} if it is absent
+   */
+  private int search(int value) {
+    return Arrays.binarySearch(elements, from, to, value);
+  }
+
+  private int ceilingIndex(int value) {
+    int index = search(value);
+    return index >= 0 ? index : -index - 1;
+  }
+
+  private int higherIndex(int value) {
+    int index = search(value);
+    return index >= 0 ? index + 1 : -index - 1;
+  }
+
+  private int floorIndex(int value) {
+    int index = search(value);
+    return index >= 0 ? index : -index - 2;
+  }
+
+  private int lowerIndex(int value) {
+    int index = search(value);
+    return index >= 0 ? index - 1 : -index - 2;
+  }
+
+  private boolean isValidIndex(int index) {
+    return index >= from && index < to;
+  }
+
+  private Integer getElementByIndex(int index) {
+    return isValidIndex(index) ? elements[index] : null;
+  }
+
+  private int getValueByIndex(int index) {
+    if (!isValidIndex(index)) {
+      throw new NoSuchElementException(NO_SUCH_ELEMENT_EXCEPTION_MESSAGE);
+    }
+    return elements[index];
+  }
+
+  /**
+   * @param value value to search for
+   * @return whether the set contains the value
+   */
+  public boolean containsInt(int value) {
+    return search(value) >= 0;
+  }
+
+  /**
+   * @param value value to search for
+   * @return least element greater than or equal to the value in the order of the set
+   * @throws NoSuchElementException if there is no such element
+   */
+  public int ceilingInt(int value) {
+    return getValueByIndex(reversed ? floorIndex(value) : ceilingIndex(value));
+  }
+
+  /**
+   * @param value value to search for
+   * @return greatest element less than or equal to the value in the order of the set
+   * @throws NoSuchElementException if there is no such element
+   */
+  public int floorInt(int value) {
+    return getValueByIndex(reversed ? ceilingIndex(value) : floorIndex(value));
+  }
+
+  /**
+   * @return first element in the order of the set
+   * @throws NoSuchElementException if the set is empty
+   */
+  public int firstInt() {
+    return getValueByIndex(reversed ? to - 1 : from);
+  }
+
+  /**
+   * @return last element in the order of the set
+   * @throws NoSuchElementException if the set is empty
+   */
+  public int lastInt() {
+    return getValueByIndex(reversed ? from : to - 1);
+  }
+
+  @Override
+  public Integer lower(Integer e) {
+    return getElementByIndex(reversed ? higherIndex(e) : lowerIndex(e));
+  }
+
+  @Override
+  public Integer floor(Integer e) {
+    return getElementByIndex(reversed ? ceilingIndex(e) : floorIndex(e));
+  }
+
+  @Override
+  public Integer ceiling(Integer e) {
+    return getElementByIndex(reversed ? floorIndex(e) : ceilingIndex(e));
+  }
+
+  @Override
+  public Integer higher(Integer e) {
+    return getElementByIndex(reversed ? lowerIndex(e) : higherIndex(e));
+  }
+
+  @Override
+  public Integer pollFirst() {
+    throw new UnsupportedOperationException(UNSUPPORTED_OPERATION_EXCEPTION_MESSAGE);
+  }
+
+  @Override
+  public Integer pollLast() {
+    throw new UnsupportedOperationException(UNSUPPORTED_OPERATION_EXCEPTION_MESSAGE);
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return o instanceof Integer && containsInt((Integer) o);
+  }
+
+  @Override
+  public PrimitiveIterator.OfInt iterator() {
+    return new PrimitiveIterator.OfInt() {
+      private int index = reversed ? to - 1 : from;
+
+      @Override
+      public boolean hasNext() {
+        return isValidIndex(index);
+      }
+
+      @Override
+      public int nextInt() {
+        int value = getValueByIndex(index);
+        index += reversed ? -1 : 1;
+        return value;
+      }
+    };
+  }
+
+  @Override
+  public IntArraySet descendingSet() {
+    return new IntArraySet(elements, from, to, !reversed);
+  }
+
+  @Override
+  public PrimitiveIterator.OfInt descendingIterator() {
+    return descendingSet().iterator();
+  }
+
+  @Override
+  public void clear() {
+    throw new UnsupportedOperationException(UNSUPPORTED_OPERATION_EXCEPTION_MESSAGE);
+  }
+
+  @Override
+  public boolean add(Integer e) {
+    throw new UnsupportedOperationException(UNSUPPORTED_OPERATION_EXCEPTION_MESSAGE);
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends Integer> collection) {
+    throw new UnsupportedOperationException(UNSUPPORTED_OPERATION_EXCEPTION_MESSAGE);
+  }
+
+  /**
+   * @param low           lower bound in natural order, {@code null} for none
+   * @param lowInclusive  whether the lower bound is included
+   * @param high          upper bound in natural order, {@code null} for none
+   * @param highInclusive whether the upper bound is included
+   * @return window of this set between the bounds, in the same order
+   */
+  private IntArraySet window(Integer low, boolean lowInclusive, Integer high, boolean highInclusive) {
+    int fromIndex = low == null ? from : lowInclusive ? ceilingIndex(low) : higherIndex(low);
+    int toIndex = high == null ? to : (highInclusive ? floorIndex(high) : lowerIndex(high)) + 1;
+    return new IntArraySet(elements, fromIndex, Math.max(fromIndex, toIndex), reversed);
+  }
+
+  @Override
+  public IntArraySet subSet(Integer fromElement, boolean fromInclusive, Integer toElement, boolean toInclusive) {
+    int order = Integer.compare(fromElement, toElement);
+    if (reversed ? order < 0 : order > 0) {
+      throw new IllegalArgumentException("fromElement > toElement");
+    }
+    return reversed
+      ? window(toElement, toInclusive, fromElement, fromInclusive)
+      : window(fromElement, fromInclusive, toElement, toInclusive);
+  }
+
+  @Override
+  public IntArraySet headSet(Integer toElement, boolean inclusive) {
+    Objects.requireNonNull(toElement);
+    return reversed
+      ? window(toElement, inclusive, null, false)
+      : window(null, false, toElement, inclusive);
+  }
+
+  @Override
+  public IntArraySet tailSet(Integer fromElement, boolean inclusive) {
+    Objects.requireNonNull(fromElement);
+    return reversed
+      ? window(null, false, fromElement, inclusive)
+      : window(fromElement, inclusive, null, false);
+  }
+
+  @Override
+  public Comparator<? super Integer> comparator() {
+    return reversed ? Collections.reverseOrder() : null;
+  }
+
+  @Override
+  public SortedSet<Integer> subSet(Integer fromElement, Integer toElement) {
+    return subSet(fromElement, true, toElement, false);
+  }
+
+  @Override
+  public SortedSet<Integer> headSet(Integer toElement) {
+    return headSet(toElement, false);
+  }
+
+  @Override
+  public SortedSet<Integer> tailSet(Integer fromElement) {
+    return tailSet(fromElement, true);
+  }
+
+  @Override
+  public Integer first() {
+    return firstInt();
+  }
+
+  @Override
+  public Integer last() {
+    return lastInt();
+  }
+
+  @Override
+  public int size() {
+    return to - from;
+  }
+
+  @Override
+  public int hashCode() {
+    int hashCode = 0;
+    for (int i = from; i < to; i++) {
+      hashCode += Integer.hashCode(elements[i]);
+    }
+    return hashCode;
+  }
+}
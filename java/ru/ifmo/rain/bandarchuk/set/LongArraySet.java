@@ -0,0 +1,334 @@
+package ru.ifmo.rain.bandarchuk.set;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PrimitiveIterator;
+import java.util.SortedSet;
+
+/**
+ * Immutable navigable set of {@code long} values backed by a sorted {@code long[]}
+ * <br>
+ * Elements are ordered naturally. Besides the {@link NavigableSet} methods, {@link #containsLong(long)},
+ * {@link #ceilingLong(long)} and {@link #floorLong(long)} search without boxing. Subsets and the descending set
+ * are windows over the same array, created in constant time.
+ * <br>
+ * The class mirrors {@link IntArraySet} line by line and is kept in sync with it by hand.
+ */
+public class LongArraySet extends AbstractSet<Long> implements NavigableSet<Long> {
+
+  private static final String UNSUPPORTED_OPERATION_EXCEPTION_MESSAGE = "The object is immutable";
+  private static final String NO_SUCH_ELEMENT_EXCEPTION_MESSAGE = "No such element in the set";
+
+  private static final long[] EMPTY = new long[0];
+
+  private final long[] elements;
+  private final int from;
+  private final int to;
+  private final boolean reversed;
+
+  public LongArraySet() {
+    this(EMPTY, false);
+  }
+
+  /**
+   * @param values elements of the set in any order, possibly repeated
+   */
+  public LongArraySet(long... values) {
+    this(sorted(values.clone()), false);
+  }
+
+  public LongArraySet(Collection<? extends Long> collection) {
+    this(sorted(toArray(collection)), false);
+  }
+
+  private LongArraySet(long[] sorted, boolean reversed) {
+    this(sorted, 0, sorted.length, reversed);
+  }
+
+  private LongArraySet(long[] elements, int from, int to, boolean reversed) {
+    this.elements = elements;
+    this.from = from;
+    this.to = to;
+    this.reversed = reversed;
+  }
+
+  private static long[] toArray(Collection<? extends Long> collection) {
+    if (collection instanceof LongArraySet) {
+      LongArraySet set = (LongArraySet) collection;
+      return Arrays.copyOfRange(set.elements, set.from, set.to);
+    }
+    long[] values = new long[collection.size()];
+    int size = 0;
+    for (Long value : collection) {
+      values[size++] = value;
+    }
+    return size == values.length ? values : Arrays.copyOf(values, size);
+  }
+
+  /**
+   * Sorts the values and removes repeated ones, reusing the array when possible
+   */
+  private static long[] sorted(long[] values) {
+    Arrays.sort(values);
+    int size = 0;
+    for (int i = 0; i < values.length; i++) {
+      if (size == 0 || values[size - 1] != values[i]) {
+        values[size++] = values[i];
+      }
+    }
+    return size == values.length ? values : Arrays.copyOf(values, size);
+  }
+
+  /**
+   * @return index of the value in the window, or {@code -(insertion point) - 1} if it is absent
+   */
+  private int search(long value) {
+    return Arrays.binarySearch(elements, from, to, value);
+  }
+
+  private int ceilingIndex(long value) {
+    int index = search(value);
+    return index >= 0 ? index : -index - 1;
+  }
+
+  private int higherIndex(long value) {
+    int index = search(value);
+    return index >= 0 ? index + 1 : -index - 1;
+  }
+
+  private int floorIndex(long value) {
+    int index = search(value);
+    return index >= 0 ? index : -index - 2;
+  }
+
+  private int lowerIndex(long value) {
+    int index = search(value);
+    return index >= 0 ? index - 1 : -index - 2;
+  }
+
+  private boolean isValidIndex(int index) {
+    return index >= from && index < to;
+  }
+
+  private Long getElementByIndex(int index) {
+    return isValidIndex(index) ? elements[index] : null;
+  }
+
+  private long getValueByIndex(int index) {
+    if (!isValidIndex(index)) {
+      throw new NoSuchElementException(NO_SUCH_ELEMENT_EXCEPTION_MESSAGE);
+    }
+    return elements[index];
+  }
+
+  /**
+   * @param value value to search for
+   * @return whether the set contains the value
+   */
+  public boolean containsLong(long value) {
+    return search(value) >= 0;
+  }
+
+  /**
+   * @param value value to search for
+   * @return least element greater than or equal to the value in the order of the set
+   * @throws NoSuchElementException if there is no such element
+   */
+  public long ceilingLong(long value) {
+    return getValueByIndex(reversed ? floorIndex(value) : ceilingIndex(value));
+  }
+
+  /**
+   * @param value value to search for
+   * @return greatest element less than or equal to the value in the order of the set
+   * @throws NoSuchElementException if there is no such element
+   */
+  public long floorLong(long value) {
+    return getValueByIndex(reversed ? ceilingIndex(value) : floorIndex(value));
+  }
+
+  /**
+   * @return first element in the order of the set
+   * @throws NoSuchElementException if the set is empty
+   */
+  public long firstLong() {
+    return getValueByIndex(reversed ? to - 1 : from);
+  }
+
+  /**
+   * @return last element in the order of the set
+   * @throws NoSuchElementException if the set is empty
+   */
+  public long lastLong() {
+    return getValueByIndex(reversed ? from : to - 1);
+  }
+
+  @Override
+  public Long lower(Long e) {
+    return getElementByIndex(reversed ? higherIndex(e) : lowerIndex(e));
+  }
+
+  @Override
+  public Long floor(Long e) {
+    return getElementByIndex(reversed ? ceilingIndex(e) : floorIndex(e));
+  }
+
+  @Override
+  public Long ceiling(Long e) {
+    return getElementByIndex(reversed ? floorIndex(e) : ceilingIndex(e));
+  }
+
+  @Override
+  public Long higher(Long e) {
+    return getElementByIndex(reversed ? lowerIndex(e) : higherIndex(e));
+  }
+
+  @Override
+  public Long pollFirst() {
+    throw new UnsupportedOperationException(UNSUPPORTED_OPERATION_EXCEPTION_MESSAGE);
+  }
+
+  @Override
+  public Long pollLast() {
+    throw new UnsupportedOperationException(UNSUPPORTED_OPERATION_EXCEPTION_MESSAGE);
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return o instanceof Long && containsLong((Long) o);
+  }
+
+  @Override
+  public PrimitiveIterator.OfLong iterator() {
+    return new PrimitiveIterator.OfLong() {
+      private int index = reversed ? to - 1 : from;
+
+      @Override
+      public boolean hasNext() {
+        return isValidIndex(index);
+      }
+
+      @Override
+      public long nextLong() {
+        long value = getValueByIndex(index);
+        index += reversed ? -1 : 1;
+        return value;
+      }
+    };
+  }
+
+  @Override
+  public LongArraySet descendingSet() {
+    return new LongArraySet(elements, from, to, !reversed);
+  }
+
+  @Override
+  public PrimitiveIterator.OfLong descendingIterator() {
+    return descendingSet().iterator();
+  }
+
+  @Override
+  public void clear() {
+    throw new UnsupportedOperationException(UNSUPPORTED_OPERATION_EXCEPTION_MESSAGE);
+  }
+
+  @Override
+  public boolean add(Long e) {
+    throw new UnsupportedOperationException(UNSUPPORTED_OPERATION_EXCEPTION_MESSAGE);
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends Long> collection) {
+    throw new UnsupportedOperationException(UNSUPPORTED_OPERATION_EXCEPTION_MESSAGE);
+  }
+
+  /**
+   * @param low           lower bound in natural order, {@code null} for none
+   * @param lowInclusive  whether the lower bound is included
+   * @param high          upper bound in natural order, {@code null} for none
+   * @param highInclusive whether the upper bound is included
+   * @return window of this set between the bounds, in the same order
+   */
+  private LongArraySet window(Long low, boolean lowInclusive, Long high, boolean highInclusive) {
+    int fromIndex = low == null ? from : lowInclusive ? ceilingIndex(low) : higherIndex(low);
+    int toIndex = high == null ? to : (highInclusive ? floorIndex(high) : lowerIndex(high)) + 1;
+    return new LongArraySet(elements, fromIndex, Math.max(fromIndex, toIndex), reversed);
+  }
+
+  @Override
+  public LongArraySet subSet(Long fromElement, boolean fromInclusive, Long toElement, boolean toInclusive) {
+    int order = Long.compare(fromElement, toElement);
+    if (reversed ? order < 0 : order > 0) {
+      throw new IllegalArgumentException("fromElement > toElement");
+    }
+    return reversed
+      ? window(toElement, toInclusive, fromElement, fromInclusive)
+      : window(fromElement, fromInclusive, toElement, toInclusive);
+  }
+
+  @Override
+  public LongArraySet headSet(Long toElement, boolean inclusive) {
+    Objects.requireNonNull(toElement);
+    return reversed
+      ? window(toElement, inclusive, null, false)
+      : window(null, false, toElement, inclusive);
+  }
+
+  @Override
+  public LongArraySet tailSet(Long fromElement, boolean inclusive) {
+    Objects.requireNonNull(fromElement);
+    return reversed
+      ? window(null, false, fromElement, inclusive)
+      : window(fromElement, inclusive, null, false);
+  }
+
+  @Override
+  public Comparator<? super Long> comparator() {
+    return reversed ? Collections.reverseOrder() : null;
+  }
+
+  @Override
+  public SortedSet<Long> subSet(Long fromElement, Long toElement) {
+    return subSet(fromElement, true, toElement, false);
+  }
+
+  @Override
+  public SortedSet<Long> headSet(Long toElement) {
+    return headSet(toElement, false);
+  }
+
+  @Override
+  public SortedSet<Long> tailSet(Long fromElement) {
+    return tailSet(fromElement, true);
+  }
+
+  @Override
+  public Long first() {
+    return firstLong();
+  }
+
+  @Override
+  public Long last() {
+    return lastLong();
+  }
+
+  @Override
+  public int size() {
+    return to - from;
+  }
+
+  @Override
+  public int hashCode() {
+    int hashCode = 0;
+    for (int i = from; i < to; i++) {
+      hashCode += Long.hashCode(elements[i]);
+    }
+    return hashCode;
+  }
+}
@@ -0,0 +1,147 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.ProviderNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipError;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Reading of zip archives and their entries without extracting them
+ * <br>
+ * Entries are named {@code <archive>!/<entry>}, entries of nested archives
+ * {@code <archive>!/<nested archive>!/<entry>}. The Java 8 zip file system reports corrupted archives
+ * with {@link ZipError} instead of an {@link IOException}; both are treated as unreadable archives.
+ */
+final class Archives {
+
+    private static final String[] EXTENSIONS = {".zip", ".jar", ".war", ".ear"};
+
+    /**
+     * Nested archives larger than this are hashed but not expanded, as they have to be held in memory
+     */
+    private static final int MAX_BUFFERED_ARCHIVE = 64 * 1024 * 1024;
+
+    private Archives() {
+    }
+
+    static boolean isArchive(final String name) {
+      final String lowerCase = name.toLowerCase(Locale.ROOT);
+      for (String extension : EXTENSIONS) {
+        if (lowerCase.endsWith(extension)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    static String entryName(final String archive, final String entry) {
+      return archive + "!" + (entry.startsWith("/") ? entry : "/" + entry);
+    }
+
+    /**
+     * @param archive archive on the default file system
+     * @return zip file system of the archive, or {@code null} if it is not a readable zip archive
+     */
+    static FileSystem open(final Path archive) {
+      try {
+        return FileSystems.newFileSystem(archive, (ClassLoader) null);
+      } catch (IOException | ProviderNotFoundException | UnsupportedOperationException | ZipError e) {
+        return null;
+      }
+    }
+
+    /**
+     * Hashes an entry read as a stream
+     *
+     * @param entry        path inside a zip file system
+     * @param hashFunction function to hash the entry with
+     * @return digest of the entry or the zero digest if it could not be read
+     */
+    static byte[] hash(final Path entry, final HashFunction hashFunction) {
+      final Hasher hasher = hashFunction.newHasher();
+      try (InputStream in = Files.newInputStream(entry)) {
+        FileContent.read(in, hasher);
+        return hasher.digest();
+      } catch (IOException | ZipError e) {
+        return hashFunction.getEmptyHash();
+      }
+    }
+
+    /**
+     * Hashes entries of a nested archive, expanding archives inside it up to the given depth
+     *
+     * @param archive      path inside a zip file system
+     * @param name         name of the archive
+     * @param depth        number of further nesting levels to expand
+     * @param hashFunction function to hash entries with
+     * @return entries in the order of the archive, up to the first unreadable one
+     */
+    static List<WalkEntry> readNested(final Path archive, final String name, final int depth,
+                                      final HashFunction hashFunction) {
+      final List<WalkEntry> entries = new ArrayList<>();
+      try (InputStream in = Files.newInputStream(archive)) {
+        readNested(in, name, depth, hashFunction, entries);
+      } catch (IOException | ZipError ignored) {
+      }
+      return entries;
+    }
+
+    private static void readNested(final InputStream in, final String name, final int depth,
+                                   final HashFunction hashFunction, final List<WalkEntry> entries) throws IOException {
+      final ZipInputStream zip = new ZipInputStream(in);
+      ZipEntry zipEntry;
+      while ((zipEntry = zip.getNextEntry()) != null) {
+        if (zipEntry.isDirectory()) {
+          continue;
+        }
+        final String entryName = entryName(name, zipEntry.getName());
+        final Hasher hasher = hashFunction.newHasher();
+        if (depth > 0 && isArchive(zipEntry.getName())) {
+          final byte[] bytes = readBuffered(zip, hasher);
+          entries.add(WalkEntry.completed(entryName, hasher.digest()));
+          if (bytes != null) {
+            try {
+              readNested(new ByteArrayInputStream(bytes), entryName, depth - 1, hashFunction, entries);
+            } catch (IOException ignored) {
+            }
+          }
+        } else {
+          FileContent.read(zip, hasher);
+          entries.add(WalkEntry.completed(entryName, hasher.digest()));
+        }
+      }
+    }
+
+    /**
+     * Feeds the rest of the stream, keeping its contents unless they exceed {@link #MAX_BUFFERED_ARCHIVE}
+     *
+     * @return contents of the stream or {@code null} if they are too large
+     */
+    private static byte[] readBuffered(final InputStream in, final Hasher hasher) throws IOException {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) >= 0) {
+        hasher.update(ByteBuffer.wrap(buffer, 0, read));
+        if (out != null) {
+          out.write(buffer, 0, read);
+          if (out.size() > MAX_BUFFERED_ARCHIVE) {
+            out = null;
+          }
+        }
+      }
+      return out == null ? null : out.toByteArray();
+    }
+}
@@ -0,0 +1,112 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+/**
+ * CRC-32C (Castagnoli)
+ * <br>
+ * Uses the intrinsified {@code java.util.zip.CRC32C} when the runtime provides it
+ * and falls back to a table-driven implementation otherwise.
+ */
+public class CRC32CHash implements HashFunction {
+
+    private static final int POLYNOMIAL = 0x82f63b78;
+    private static final int[] TABLE = new int[256];
+
+    private static final MethodHandle NATIVE_CONSTRUCTOR;
+    private static final MethodHandle NATIVE_UPDATE;
+
+    static {
+      for (int index = 0; index < TABLE.length; index++) {
+        int crc = index;
+        for (int bit = 0; bit < Byte.SIZE; bit++) {
+          crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+        }
+        TABLE[index] = crc;
+      }
+
+      MethodHandle constructor;
+      MethodHandle update;
+      try {
+        final Class<?> nativeClass = Class.forName("java.util.zip.CRC32C");
+        constructor = MethodHandles.publicLookup().findConstructor(nativeClass, MethodType.methodType(void.class))
+          .asType(MethodType.methodType(Checksum.class));
+        update = MethodHandles.publicLookup().findVirtual(Checksum.class, "update",
+          MethodType.methodType(void.class, ByteBuffer.class));
+      } catch (ReflectiveOperationException e) {
+        constructor = null;
+        update = null;
+      }
+      NATIVE_CONSTRUCTOR = constructor;
+      NATIVE_UPDATE = update;
+    }
+
+    @Override
+    public String getName() {
+      return "crc32c";
+    }
+
+    @Override
+    public int getLength() {
+      return Integer.BYTES;
+    }
+
+    @Override
+    public Hasher newHasher() {
+      return NATIVE_CONSTRUCTOR == null ? new TableHasher() : new NativeHasher();
+    }
+
+    private static byte[] toBytes(final long crc) {
+      return ByteBuffer.allocate(Integer.BYTES).putInt((int) crc).array();
+    }
+
+    private static class TableHasher implements Hasher {
+      private int crc = ~0;
+
+      @Override
+      public void update(final ByteBuffer bytes) {
+        final int limit = bytes.limit();
+        for (int index = bytes.position(); index < limit; index++) {
+          crc = (crc >>> 8) ^ TABLE[(crc ^ bytes.get(index)) & 0xff];
+        }
+        bytes.position(limit);
+      }
+
+      @Override
+      public byte[] digest() {
+        return toBytes(~crc);
+      }
+    }
+
+    private static class NativeHasher implements Hasher {
+      private final Checksum checksum;
+
+      NativeHasher() {
+        try {
+          checksum = (Checksum) NATIVE_CONSTRUCTOR.invokeExact();
+        } catch (Throwable e) {
+          throw new IllegalStateException("Can not create CRC32C", e);
+        }
+      }
+
+      @Override
+      public void update(final ByteBuffer bytes) {
+        try {
+          NATIVE_UPDATE.invokeExact(checksum, bytes);
+        } catch (RuntimeException | Error e) {
+          throw e;
+        } catch (Throwable e) {
+          throw new IllegalStateException(e);
+        }
+      }
+
+      @Override
+      public byte[] digest() {
+        return toBytes(checksum.getValue());
+      }
+    }
+}
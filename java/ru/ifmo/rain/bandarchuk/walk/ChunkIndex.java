@@ -0,0 +1,91 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+/**
+ * Concurrent set of 64-bit chunk fingerprints
+ * <br>
+ * Fingerprints are stored in segments of open-addressed {@code long[]} tables with linear probing,
+ * eight bytes per slot at most twice the number of fingerprints. Segments are locked separately;
+ * fingerprints are expected to be uniformly distributed, so their bits pick the segment and the slot.
+ */
+class ChunkIndex {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private final Segment[] segments;
+    private final int segmentShift;
+
+    private static class Segment {
+      private long[] slots;
+      private int size;
+
+      Segment(final int capacity) {
+        slots = new long[capacity];
+      }
+
+      synchronized boolean add(final long key) {
+        if (!insert(slots, key)) {
+          return false;
+        }
+        if (++size * 2 > slots.length) {
+          final long[] grown = new long[slots.length * 2];
+          for (long slot : slots) {
+            if (slot != 0) {
+              insert(grown, slot);
+            }
+          }
+          slots = grown;
+        }
+        return true;
+      }
+
+      synchronized int size() {
+        return size;
+      }
+
+      private static boolean insert(final long[] slots, final long key) {
+        final int mask = slots.length - 1;
+        for (int index = (int) key & mask; ; index = (index + 1) & mask) {
+          if (slots[index] == key) {
+            return false;
+          }
+          if (slots[index] == 0) {
+            slots[index] = key;
+            return true;
+          }
+        }
+      }
+    }
+
+    /**
+     * @param segments        number of separately locked segments, rounded up to a power of two
+     * @param initialCapacity expected number of fingerprints
+     */
+    ChunkIndex(final int segments, final int initialCapacity) {
+      final int count = segments <= 1 ? 1 : Integer.highestOneBit(segments - 1) << 1;
+      final int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, 2 * initialCapacity / count) - 1) << 1;
+      this.segments = new Segment[count];
+      for (int i = 0; i < count; i++) {
+        this.segments[i] = new Segment(capacity);
+      }
+      this.segmentShift = Long.SIZE - Integer.numberOfTrailingZeros(count);
+    }
+
+    /**
+     * @param fingerprint fingerprint of a chunk
+     * @return whether the fingerprint was not in the index yet
+     */
+    boolean add(final long fingerprint) {
+      // zero marks free slots
+      final long key = fingerprint == 0 ? 1 : fingerprint;
+      final int segment = segments.length == 1 ? 0 : (int) (key >>> segmentShift);
+      return segments[segment].add(key);
+    }
+
+    long size() {
+      long size = 0;
+      for (Segment segment : segments) {
+        size += segment.size();
+      }
+      return size;
+    }
+}
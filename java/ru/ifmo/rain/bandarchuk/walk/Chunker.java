@@ -0,0 +1,90 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Splits a stream into content-defined chunks with a gear rolling hash
+ * <br>
+ * A chunk ends where the top bits of the rolling hash are all zero, so equal runs of bytes
+ * are cut at the same places wherever they occur in a file. Chunks are kept between
+ * {@link #MIN_CHUNK} and {@link #MAX_CHUNK} bytes, {@link #AVERAGE_CHUNK} on average.
+ * Fed as a {@link Hasher}, so files are read with the usual buffers and mappings;
+ * {@link #digest()} ends the last chunk.
+ */
+class Chunker implements Hasher {
+
+    static final int MIN_CHUNK = 2 * 1024;
+    static final int AVERAGE_CHUNK = 8 * 1024;
+    static final int MAX_CHUNK = 64 * 1024;
+
+    private static final long BOUNDARY_MASK = -1L << (Long.SIZE - Integer.numberOfTrailingZeros(AVERAGE_CHUNK));
+    private static final long[] GEAR = new long[256];
+
+    static {
+      final Random random = new Random(0x6765617248617368L);
+      for (int i = 0; i < GEAR.length; i++) {
+        GEAR[i] = random.nextLong();
+      }
+    }
+
+    /**
+     * Receiver of chunk fingerprints, called on the hashing thread
+     */
+    interface Sink {
+      void accept(long fingerprint, int length);
+    }
+
+    private static final HashFunction FINGERPRINT = new XXHash64();
+
+    private final Sink sink;
+
+    private Hasher fingerprint = FINGERPRINT.newHasher();
+    private long gear = 0;
+    private int length = 0;
+    private long chunks = 0;
+
+    Chunker(final Sink sink) {
+      this.sink = sink;
+    }
+
+    @Override
+    public void update(final ByteBuffer bytes) {
+      final int limit = bytes.limit();
+      int start = bytes.position();
+      for (int index = start; index < limit; index++) {
+        gear = (gear << 1) + GEAR[bytes.get(index) & 0xff];
+        length++;
+        if (length >= MIN_CHUNK && (gear & BOUNDARY_MASK) == 0 || length == MAX_CHUNK) {
+          bytes.limit(index + 1).position(start);
+          fingerprint.update(bytes);
+          bytes.limit(limit);
+          endChunk();
+          start = index + 1;
+        }
+      }
+      bytes.position(start);
+      fingerprint.update(bytes);
+    }
+
+    private void endChunk() {
+      sink.accept(ByteBuffer.wrap(fingerprint.digest()).getLong(), length);
+      chunks++;
+      fingerprint = FINGERPRINT.newHasher();
+      gear = 0;
+      length = 0;
+    }
+
+    /**
+     * Ends the last chunk
+     *
+     * @return number of chunks as a big-endian {@code long}
+     */
+    @Override
+    public byte[] digest() {
+      if (length > 0) {
+        endChunk();
+      }
+      return ByteBuffer.allocate(Long.BYTES).putLong(chunks).array();
+    }
+}
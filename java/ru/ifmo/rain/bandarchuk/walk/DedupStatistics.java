@@ -0,0 +1,236 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures how much data the walked files share at the level of content-defined chunks
+ * <br>
+ * Every file is split by {@link Chunker} on the executor and its chunk fingerprints are added to
+ * a {@link ChunkIndex} of the whole walk and to one of its directory. Once the files of a directory
+ * are processed, {@code <ratio> <bytes> <unique bytes> <directory>} is written for it, counting the files
+ * directly inside it; directories follow in the order they are left, so a directory comes after its
+ * subdirectories. After an empty line the walk total {@code <ratio> <bytes> <unique bytes>} is written.
+ * The ratio is bytes over unique bytes. Unreadable files count with the bytes read before the error.
+ * At most {@code capacity} files are chunked or queued for chunking at once, so a slow executor
+ * blocks the traversal instead of piling up tasks.
+ */
+public class DedupStatistics implements WalkConsumer {
+
+    private static final int MAX_PENDING = 1024;
+    private static final int INDEX_SEGMENTS = 64;
+    private static final int INDEX_CAPACITY = 1 << 16;
+
+    private final ExecutorService executor;
+    private final int capacity;
+    private final ResultWriter resultWriter;
+
+    /**
+     * Metrics of the walk, discarded unless {@link #setMetrics(WalkMetrics) set}
+     */
+    private WalkMetrics metrics = new WalkMetrics();
+
+    private final Usage total = new Usage(null, new ChunkIndex(INDEX_SEGMENTS, INDEX_CAPACITY));
+    private final Deque<Usage> open = new ArrayDeque<>();
+    private final Deque<Usage> pending = new ArrayDeque<>();
+
+    /**
+     * Chunking tasks in the order they were submitted
+     */
+    private final Deque<Task> inFlight = new ArrayDeque<>();
+
+    private static class Task {
+      private final Future<?> future;
+      private final Usage usage;
+
+      Task(final Future<?> future, final Usage usage) {
+        this.future = future;
+        this.usage = usage;
+      }
+    }
+
+    /**
+     * Chunks of the files of a directory or of the whole walk
+     */
+    private static class Usage {
+      private final String path;
+      private final LongAdder bytes = new LongAdder();
+      private final LongAdder uniqueBytes = new LongAdder();
+      private ChunkIndex index;
+
+      /**
+       * Number of files of the usage in flight
+       */
+      private int running = 0;
+
+      Usage(final String path, final ChunkIndex index) {
+        this.path = path;
+        this.index = index;
+      }
+
+      void add(final long fingerprint, final int length) {
+        bytes.add(length);
+        if (index.add(fingerprint)) {
+          uniqueBytes.add(length);
+        }
+      }
+
+      String format() {
+        final long unique = uniqueBytes.sum();
+        final double ratio = unique == 0 ? 1 : bytes.sum() / (double) unique;
+        return String.format(Locale.ROOT, "%.3f %d %d", ratio, bytes.sum(), unique)
+          + (path == null ? "" : " " + path);
+      }
+    }
+
+    /**
+     * @param threads      number of threads to chunk files on
+     * @param resultWriter destination of the statistics
+     */
+    public DedupStatistics(final int threads, final ResultWriter resultWriter) {
+      this(HashExecutors.fixed(threads), threads * WalkPipeline.QUEUE_CAPACITY_PER_THREAD, resultWriter);
+    }
+
+    /**
+     * @param executor     executor to chunk files on, shut down when the statistics are closed
+     * @param capacity     maximal number of files in flight
+     * @param resultWriter destination of the statistics
+     */
+    public DedupStatistics(final ExecutorService executor, final int capacity, final ResultWriter resultWriter) {
+      if (capacity <= 0) {
+        throw new IllegalArgumentException("Invalid argument: capacity = " + capacity + ", should be positive");
+      }
+      this.executor = executor;
+      this.capacity = capacity;
+      this.resultWriter = resultWriter;
+    }
+
+    /**
+     * @param metrics metrics to add the time of chunking files to
+     */
+    void setMetrics(final WalkMetrics metrics) {
+      this.metrics = metrics;
+    }
+
+    @Override
+    public void enterDirectory(final Path dir, final BasicFileAttributes attrs) {
+      open.push(new Usage(dir.toString(), new ChunkIndex(1, 0)));
+    }
+
+    @Override
+    public void submit(final Path file, final BasicFileAttributes attrs) throws IOException {
+      if (attrs == null || !attrs.isRegularFile()) {
+        return;
+      }
+      if (inFlight.size() >= capacity) {
+        reap();
+      }
+      final Usage directory = open.peek();
+      final Chunker.Sink sink = directory == null
+        ? total::add
+        : (fingerprint, length) -> {
+          total.add(fingerprint, length);
+          directory.add(fingerprint, length);
+        };
+      final Future<?> future = executor.submit(() -> metrics.timeHash(() -> {
+        final Chunker chunker = new Chunker(sink);
+        try {
+          FileContent.read(file, chunker);
+        } finally {
+          chunker.digest();
+        }
+        return null;
+      }));
+      final Usage usage = directory == null ? total : directory;
+      usage.running++;
+      inFlight.add(new Task(future, usage));
+    }
+
+    /**
+     * Waits for the oldest file in flight
+     */
+    private void reap() throws IOException {
+      final Task task = inFlight.removeFirst();
+      task.usage.running--;
+      await(task.future);
+    }
+
+    @Override
+    public void submitFailed(final String path) {
+    }
+
+    @Override
+    public void exitDirectory(final Path dir) throws IOException {
+      pending.add(open.pop());
+      writeCompleted(pending.size() > MAX_PENDING);
+    }
+
+    /**
+     * Writes statistics of the directories whose files are processed, in the order they were left
+     *
+     * @param wait whether to wait for the first pending directory
+     */
+    private void writeCompleted(final boolean wait) throws IOException {
+      while (!inFlight.isEmpty() && inFlight.peekFirst().future.isDone()) {
+        reap();
+      }
+      if (wait) {
+        writeFirst();
+      }
+      while (!pending.isEmpty() && pending.peekFirst().running == 0) {
+        writeFirst();
+      }
+    }
+
+    private void writeFirst() throws IOException {
+      final Usage directory = pending.removeFirst();
+      await(directory);
+      resultWriter.writeText(directory.format());
+    }
+
+    private void await(final Usage usage) throws IOException {
+      while (usage.running > 0) {
+        reap();
+      }
+      usage.index = null;
+    }
+
+    /**
+     * Waits for a file to be chunked, ignoring read errors
+     */
+    private static void await(final Future<?> future) throws IOException {
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        if (!(e.getCause() instanceof IOException)) {
+          throw new IOException("Error while chunking files", e.getCause());
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while chunking files");
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        while (!pending.isEmpty()) {
+          writeFirst();
+        }
+        await(total);
+        resultWriter.writeSeparator();
+        resultWriter.writeText(total.format());
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+}
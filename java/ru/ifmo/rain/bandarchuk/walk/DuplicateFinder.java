@@ -0,0 +1,200 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Finds groups of files with equal contents among the walked files
+ * <br>
+ * Files are grouped by size first. Only files sharing their size with another file are read:
+ * first a sample of their head and tail, then, if the samples still collide, the whole contents.
+ * Whole contents are compared by their SHA-256 digests, as collisions of a short hash function
+ * are not negligible among millions of files, and hashed with the hash function of the walk
+ * in the same read. Each group is written as {@code <hash> <path>} lines followed by an empty line,
+ * groups and files keep the traversal order.
+ */
+public class DuplicateFinder implements WalkConsumer {
+
+    private static final int SAMPLE_SIZE = 4096;
+    private static final byte[] NO_SAMPLE = new byte[0];
+    private static final HashFunction CONFIRMATION = new SHA256Hash();
+
+    private final ExecutorService executor;
+    private final HashFunction hashFunction;
+    private final ResultWriter resultWriter;
+
+    /**
+     * Metrics of the walk, discarded unless {@link #setMetrics(WalkMetrics) set}
+     */
+    private WalkMetrics metrics = new WalkMetrics();
+
+    private final Map<Long, Set<Path>> bySize = new LinkedHashMap<>();
+
+    /**
+     * @param executor     executor to read files on, shut down when the finder is closed
+     * @param hashFunction function to compare samples with and to write digests of duplicates with
+     * @param resultWriter destination of duplicate groups
+     */
+    public DuplicateFinder(final ExecutorService executor, final HashFunction hashFunction,
+                           final ResultWriter resultWriter) {
+      this.executor = executor;
+      this.hashFunction = hashFunction;
+      this.resultWriter = resultWriter;
+    }
+
+    /**
+     * @param metrics metrics to add the time of reading samples and contents to
+     */
+    void setMetrics(final WalkMetrics metrics) {
+      this.metrics = metrics;
+    }
+
+    @Override
+    public void submit(final Path file, final BasicFileAttributes attrs) {
+      if (attrs != null && attrs.isRegularFile()) {
+        bySize.computeIfAbsent(attrs.size(), size -> new LinkedHashSet<>()).add(file);
+      }
+    }
+
+    @Override
+    public void submitFailed(final String path) {
+    }
+
+    private static class Group {
+      private final long size;
+      private final List<Path> files;
+
+      Group(final long size, final List<Path> files) {
+        this.size = size;
+        this.files = files;
+      }
+    }
+
+    private interface Fingerprint {
+      byte[] apply(Path file, long size) throws IOException;
+    }
+
+    private byte[] sample(final Path file, final long size) throws IOException {
+      if (size <= 2 * SAMPLE_SIZE) {
+        return NO_SAMPLE;
+      }
+      final Hasher hasher = hashFunction.newHasher();
+      FileContent.readRanges(file, new long[]{0, size - SAMPLE_SIZE}, SAMPLE_SIZE, hasher);
+      return hasher.digest();
+    }
+
+    /**
+     * Reads the whole file once, feeding both the hash function and the confirming digest
+     *
+     * @param hashes destination of digests of the hash function
+     * @return confirming digest of the contents
+     */
+    private byte[] contents(final Path file, final Map<Path, byte[]> hashes) throws IOException {
+      final Hasher hasher = hashFunction.newHasher();
+      if (hashFunction.getName().equals(CONFIRMATION.getName())) {
+        FileContent.read(file, hasher);
+        final byte[] digest = hasher.digest();
+        hashes.put(file, digest);
+        return digest;
+      }
+      final Hasher confirmation = CONFIRMATION.newHasher();
+      FileContent.read(file, new Hasher() {
+        @Override
+        public void update(final ByteBuffer bytes) {
+          hasher.update(bytes.duplicate());
+          confirmation.update(bytes);
+        }
+
+        @Override
+        public byte[] digest() {
+          return confirmation.digest();
+        }
+      });
+      hashes.put(file, hasher.digest());
+      return confirmation.digest();
+    }
+
+    /**
+     * Splits every group by fingerprints of its files, dropping unreadable files and unique fingerprints
+     */
+    private List<Group> refine(final List<Group> groups, final Fingerprint fingerprint) throws IOException {
+      final List<Future<byte[]>> futures = new ArrayList<>();
+      for (Group group : groups) {
+        for (Path file : group.files) {
+          final Callable<byte[]> task = () -> metrics.timeHash(() -> fingerprint.apply(file, group.size));
+          futures.add(executor.submit(task));
+        }
+      }
+
+      final List<Group> result = new ArrayList<>();
+      int index = 0;
+      for (Group group : groups) {
+        final Map<ByteBuffer, List<Path>> byFingerprint = new LinkedHashMap<>();
+        for (Path file : group.files) {
+          final byte[] value = get(futures.get(index++), file);
+          if (value != null) {
+            byFingerprint.computeIfAbsent(ByteBuffer.wrap(value), key -> new ArrayList<>()).add(file);
+          }
+        }
+        for (List<Path> candidates : byFingerprint.values()) {
+          if (candidates.size() > 1) {
+            result.add(new Group(group.size, candidates));
+          }
+        }
+      }
+      return result;
+    }
+
+    private static byte[] get(final Future<byte[]> future, final Path file) throws IOException {
+      try {
+        return future.get();
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException) {
+          return null;
+        }
+        throw new IOException("Error while reading " + file, e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while searching for duplicates");
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        final List<Group> bySizeGroups = new ArrayList<>();
+        for (Map.Entry<Long, Set<Path>> entry : bySize.entrySet()) {
+          if (entry.getValue().size() > 1) {
+            bySizeGroups.add(new Group(entry.getKey(), new ArrayList<>(entry.getValue())));
+          }
+        }
+        bySize.clear();
+
+        final List<Group> candidates = refine(bySizeGroups, this::sample);
+
+        final Map<Path, byte[]> hashes = new ConcurrentHashMap<>();
+        for (Group group : refine(candidates, (file, size) -> contents(file, hashes))) {
+          for (Path file : group.files) {
+            resultWriter.write(hashes.get(file), file.toString());
+          }
+          resultWriter.writeSeparator();
+        }
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+}
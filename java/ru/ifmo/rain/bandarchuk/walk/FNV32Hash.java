@@ -1,36 +1,40 @@
 package ru.ifmo.rain.bandarchuk.walk;
 
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Path;
+import java.nio.ByteBuffer;
 
-public class FNV32Hash {
+public class FNV32Hash implements HashFunction {
 
     private static final int INIT  = 0x811c9dc5;
     private static final int PRIME = 0x01000193;
 
-    private static final int BUFF_SIZE = 1024;
+    @Override
+    public String getName() {
+      return "fnv32";
+    }
 
-    private static int getHash(final int init, final int length, final byte[] bytes) {
-      int result = init;
-      for (int index = 0; index < length; index++) {
-        result = (result * PRIME) ^ Byte.toUnsignedInt(bytes[index]);
-      }
-      return result;
+    @Override
+    public int getLength() {
+      return Integer.BYTES;
     }
 
-    public static int getHash(final Path filePath) {
-      try (InputStream inputStream = new FileInputStream(filePath.toString())) {
-        int result = INIT;
-        int countRead;
-        byte[] buff = new byte[BUFF_SIZE];
-        while ((countRead = inputStream.read(buff)) >= 0) {
-          result = getHash(result, countRead, buff);
+    @Override
+    public Hasher newHasher() {
+      return new Hasher() {
+        private int result = INIT;
+
+        @Override
+        public void update(final ByteBuffer bytes) {
+          final int limit = bytes.limit();
+          for (int index = bytes.position(); index < limit; index++) {
+            result = (result * PRIME) ^ Byte.toUnsignedInt(bytes.get(index));
+          }
+          bytes.position(limit);
+        }
+
+        @Override
+        public byte[] digest() {
+          return ByteBuffer.allocate(Integer.BYTES).putInt(result).array();
         }
-        return result;
-      } catch (IOException e) {
-        return 0;
-      }
+      };
     }
 }
@@ -0,0 +1,43 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 64-bit FNV-1a
+ */
+public class FNV64Hash implements HashFunction {
+
+    private static final long INIT  = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x00000100000001b3L;
+
+    @Override
+    public String getName() {
+      return "fnv64";
+    }
+
+    @Override
+    public int getLength() {
+      return Long.BYTES;
+    }
+
+    @Override
+    public Hasher newHasher() {
+      return new Hasher() {
+        private long result = INIT;
+
+        @Override
+        public void update(final ByteBuffer bytes) {
+          final int limit = bytes.limit();
+          for (int index = bytes.position(); index < limit; index++) {
+            result = (result ^ Byte.toUnsignedLong(bytes.get(index))) * PRIME;
+          }
+          bytes.position(limit);
+        }
+
+        @Override
+        public byte[] digest() {
+          return ByteBuffer.allocate(Long.BYTES).putLong(result).array();
+        }
+      };
+    }
+}
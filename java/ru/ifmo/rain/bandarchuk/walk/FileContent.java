@@ -0,0 +1,158 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Feeds file contents to a {@link Hasher}, mapping large files into memory
+ */
+final class FileContent {
+
+    private static final int BUFF_SIZE = 64 * 1024;
+
+    /**
+     * Files of at least this size are mapped into memory instead of being read through a buffer
+     */
+    private static final long MAPPING_THRESHOLD = 1024 * 1024;
+    private static final long MAPPING_WINDOW = 64 * 1024 * 1024;
+
+    /**
+     * Read buffers are pooled rather than thread-local, since hashing may run on short-lived threads
+     */
+    private static final Queue<ByteBuffer> BUFFERS = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Buffer of a long-lived thread configured to read every file through it, without mapping
+     */
+    private static final ThreadLocal<ByteBuffer> THREAD_BUFFER = new ThreadLocal<>();
+
+    private FileContent() {
+    }
+
+    /**
+     * Makes the current thread read every file through its own buffer of the given size
+     *
+     * @param size buffer size in bytes
+     */
+    static void useThreadBuffer(final int size) {
+      THREAD_BUFFER.set(ByteBuffer.allocate(size));
+    }
+
+    static void read(final Path file, final Hasher hasher) throws IOException {
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+        final ByteBuffer threadBuffer = THREAD_BUFFER.get();
+        final long size = channel.size();
+        if (threadBuffer != null) {
+          readStreamed(channel, hasher, threadBuffer);
+        } else if (size >= MAPPING_THRESHOLD && file.getFileSystem() == FileSystems.getDefault()) {
+          readMapped(channel, size, hasher);
+        } else {
+          readStreamed(channel, hasher);
+        }
+      }
+    }
+
+    /**
+     * Feeds the file window by window. A file truncated while a window is mapped faults on access,
+     * which the JVM raises as an {@link InternalError}; it is reported as a read error of this file.
+     */
+    private static void readMapped(final FileChannel channel, final long size, final Hasher hasher) throws IOException {
+      for (long position = 0; position < size; position += MAPPING_WINDOW) {
+        final long length = Math.min(MAPPING_WINDOW, size - position);
+        if (channel.size() < position + length) {
+          throw new IOException("File was truncated while reading");
+        }
+        try {
+          hasher.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+        } catch (InternalError e) {
+          throw new IOException("File was truncated while reading", e);
+        }
+      }
+    }
+
+    private static ByteBuffer acquireBuffer() {
+      final ByteBuffer pooled = BUFFERS.poll();
+      return pooled == null ? ByteBuffer.allocate(BUFF_SIZE) : pooled;
+    }
+
+    private static void readStreamed(final FileChannel channel, final Hasher hasher) throws IOException {
+      final ByteBuffer buff = acquireBuffer();
+      try {
+        readStreamed(channel, hasher, buff);
+      } finally {
+        BUFFERS.offer(buff);
+      }
+    }
+
+    private static void readStreamed(final FileChannel channel, final Hasher hasher, final ByteBuffer buff)
+      throws IOException {
+      buff.clear();
+      while (channel.read(buff) >= 0) {
+        buff.flip();
+        hasher.update(buff);
+        buff.clear();
+      }
+    }
+
+    /**
+     * Feeds the rest of the stream without closing it
+     *
+     * @param in     stream to read
+     * @param hasher hasher to feed
+     * @throws IOException if the stream could not be read
+     */
+    static void read(final InputStream in, final Hasher hasher) throws IOException {
+      final ByteBuffer buff = acquireBuffer();
+      try {
+        int read;
+        while ((read = in.read(buff.array(), 0, buff.capacity())) >= 0) {
+          buff.clear().limit(read);
+          hasher.update(buff);
+        }
+      } finally {
+        BUFFERS.offer(buff);
+      }
+    }
+
+    /**
+     * Feeds the given ranges of the file with positional reads, ranges past the end of file are cut
+     *
+     * @param file      file to read
+     * @param positions offsets of the ranges
+     * @param length    length of every range
+     * @param hasher    hasher to feed
+     * @throws IOException if the file could not be read
+     */
+    static void readRanges(final Path file, final long[] positions, final int length, final Hasher hasher)
+      throws IOException {
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+        final ByteBuffer buff = acquireBuffer();
+        try {
+          for (long position : positions) {
+            int remaining = length;
+            long offset = position;
+            while (remaining > 0) {
+              buff.clear().limit(Math.min(remaining, buff.capacity()));
+              final int read = channel.read(buff, offset);
+              if (read < 0) {
+                break;
+              }
+              buff.flip();
+              hasher.update(buff);
+              remaining -= read;
+              offset += read;
+            }
+          }
+        } finally {
+          BUFFERS.offer(buff);
+        }
+      }
+    }
+}
@@ -0,0 +1,18 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Computes the printed hash of a visited file
+ */
+@FunctionalInterface
+public interface FileHasher {
+
+    /**
+     * @param file  file to hash
+     * @param attrs attributes read during traversal or {@code null} if they are unknown
+     * @return digest of the file, zero digest if it could not be read
+     */
+    byte[] hash(Path file, BasicFileAttributes attrs);
+}
@@ -0,0 +1,66 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Device and inode numbers of files taken from their {@link BasicFileAttributes#fileKey() file keys}
+ * <br>
+ * File keys come with the attributes the walk has already read, so no further system call is made.
+ * On Unix a file key prints as {@code (dev=<hex>,ino=<decimal>)}; keys of any other form, including
+ * missing ones, give the value passed for unknown numbers.
+ */
+final class FileKeys {
+
+    private static final String DEVICE = "dev=";
+    private static final String INODE = "ino=";
+
+    private FileKeys() {
+    }
+
+    /**
+     * @param key     printed file key
+     * @param unknown value returned if the key has no device number
+     * @return device number of the file
+     */
+    static long getDevice(final String key, final long unknown) {
+      return parse(key, DEVICE, 16, unknown);
+    }
+
+    /**
+     * @param key     printed file key
+     * @param unknown value returned if the key has no inode number
+     * @return inode number of the file
+     */
+    static long getInode(final String key, final long unknown) {
+      return parse(key, INODE, 10, unknown);
+    }
+
+    /**
+     * @param attrs attributes of the file, possibly {@code null}
+     * @return printed file key, or {@code null} if there is none
+     */
+    static String getKey(final BasicFileAttributes attrs) {
+      final Object fileKey = attrs == null ? null : attrs.fileKey();
+      return fileKey == null ? null : fileKey.toString();
+    }
+
+    private static long parse(final String key, final String field, final int radix, final long unknown) {
+      if (key == null) {
+        return unknown;
+      }
+      final int start = key.indexOf(field);
+      if (start < 0) {
+        return unknown;
+      }
+      long value = 0;
+      int index = start + field.length();
+      for (; index < key.length(); index++) {
+        final int digit = Character.digit(key.charAt(index), radix);
+        if (digit < 0) {
+          break;
+        }
+        value = value * radix + digit;
+      }
+      return index == start + field.length() ? unknown : value;
+    }
+}
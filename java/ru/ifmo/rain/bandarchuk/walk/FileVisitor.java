@@ -1,7 +1,6 @@
 package ru.ifmo.rain.bandarchuk.walk;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
@@ -9,21 +8,69 @@ import java.nio.file.attribute.BasicFileAttributes;
 
 public class FileVisitor extends SimpleFileVisitor<Path> {
 
-    private final PrintWriter printWriter;
+    private final WalkConsumer consumer;
+    private final WalkMetrics metrics;
+    private final WalkFilter filter;
 
-    public FileVisitor(PrintWriter printWriter) {
-      this.printWriter = printWriter;
+    private Path root;
+    private int depth;
+
+    /**
+     * @param consumer consumer of visited files
+     * @param metrics  metrics to count files, directories and failed opens in
+     * @param filter   filter of visited files and directories
+     */
+    public FileVisitor(WalkConsumer consumer, WalkMetrics metrics, WalkFilter filter) {
+      this.consumer = consumer;
+      this.metrics = metrics;
+      this.filter = filter;
+    }
+
+    /**
+     * @param path visited path
+     * @return root of the current walk, the path itself outside of any directory
+     */
+    private Path getRoot(Path path) {
+      return depth == 0 ? path : root;
+    }
+
+    @Override
+    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+      if (filter.isExcluded(getRoot(dir), dir)) {
+        return FileVisitResult.SKIP_SUBTREE;
+      }
+      if (depth++ == 0) {
+        root = dir;
+      }
+      metrics.addDirectory();
+      consumer.enterDirectory(dir, attrs);
+      return FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+      depth--;
+      consumer.exitDirectory(dir);
+      return super.postVisitDirectory(dir, exc);
     }
 
     @Override
     public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-      printWriter.printf("%08x %s%n", FNV32Hash.getHash(file), file);
+      if (!filter.acceptsFile(getRoot(file), file)) {
+        return FileVisitResult.CONTINUE;
+      }
+      metrics.addFile(attrs);
+      consumer.submit(file, attrs);
       return FileVisitResult.CONTINUE;
     }
 
     @Override
     public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
-      printWriter.printf("%08x %s%n", 0, file);
+      if (!filter.acceptsFile(getRoot(file), file)) {
+        return FileVisitResult.CONTINUE;
+      }
+      metrics.addFailedOpen();
+      consumer.submitFailed(file.toString());
       return super.visitFileFailed(file, exc);
     }
 }
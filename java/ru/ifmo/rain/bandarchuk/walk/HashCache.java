@@ -0,0 +1,293 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import ru.ifmo.rain.bandarchuk.walk.snapshot.MappedFile;
+import ru.ifmo.rain.bandarchuk.walk.snapshot.RecordSorter;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistent cache of file hashes between walks
+ * <br>
+ * A file is answered from the cache without being opened if its absolute path, device and inode
+ * numbers, size and modification time match the cached entry. Device and inode numbers are taken
+ * from the file key of the walked attributes and are zero for files without one. A file modified less
+ * than {@value WalkDaemon#RACY_WINDOW_MILLIS} ms before it was hashed is not cached, as it could be
+ * rewritten within the same modification time tick without changing its size. The cache file
+ * holds fixed-width records sorted by path followed by the path bytes; it is memory-mapped in
+ * segments and searched in place. Entries seen during the current walk are spilled to sorted runs
+ * next to the cache as the walk goes and merged into the new cache on {@link #save()},
+ * so stale entries are dropped on every save.
+ */
+public class HashCache implements FileHasher {
+
+    private static final int MAGIC = 0x57484333;
+
+    private static final int PATH_OFFSET = 0;
+    private static final int PATH_LENGTH = PATH_OFFSET + Long.BYTES;
+    private static final int DEVICE = PATH_LENGTH + Integer.BYTES;
+    private static final int INODE = DEVICE + Long.BYTES;
+    private static final int SIZE = INODE + Long.BYTES;
+    private static final int MODIFIED = SIZE + Long.BYTES;
+    private static final int DIGEST = MODIFIED + Long.BYTES;
+
+    /**
+     * Length of the fields following the path in a visited record
+     */
+    private static final int VISITED_FIELDS = DIGEST - DEVICE;
+
+    private final Path cacheFile;
+    private final HashFunction hashFunction;
+    private final int recordSize;
+
+    private final MappedFile file;
+    private final long records;
+    private final long paths;
+    private final int count;
+
+    private final RecordSorter visited;
+    private volatile IOException visitFailure = null;
+
+    private HashCache(final Path cacheFile, final HashFunction hashFunction,
+                      final MappedFile file, final long records, final int count) {
+      this.cacheFile = cacheFile;
+      this.hashFunction = hashFunction;
+      this.recordSize = DIGEST + hashFunction.getLength();
+      this.file = file;
+      this.records = records;
+      this.paths = records + (long) count * recordSize;
+      this.count = count;
+      final int trailer = VISITED_FIELDS + hashFunction.getLength();
+      this.visited = new RecordSorter(
+        (first, second) -> compare(first, first.length - trailer, second, second.length - trailer),
+        cacheFile.toAbsolutePath().getParent());
+    }
+
+    /**
+     * Opens the cache, starting with an empty one if the file is missing
+     *
+     * @param cacheFile    location of the cache
+     * @param hashFunction function used to hash files missing from the cache
+     * @return opened cache
+     * @throws IOException if the cache could not be read, is corrupted or was written for another hash function
+     */
+    public static HashCache open(final Path cacheFile, final HashFunction hashFunction) throws IOException {
+      final MappedFile file;
+      try {
+        file = new MappedFile(cacheFile);
+      } catch (NoSuchFileException e) {
+        return empty(cacheFile, hashFunction);
+      }
+      try {
+        if (file.getInt(0) != MAGIC) {
+          throw new IOException("Not a hash cache of this version");
+        }
+        final byte[] name = new byte[Byte.toUnsignedInt(file.get(Integer.BYTES)) << Byte.SIZE
+          | Byte.toUnsignedInt(file.get(Integer.BYTES + 1))];
+        file.get(Integer.BYTES + Short.BYTES, name, 0, name.length);
+        final long header = Integer.BYTES + Short.BYTES + name.length;
+        final int digestLength = file.getInt(header);
+        final int count = file.getInt(header + Integer.BYTES);
+        if (!hashFunction.getName().equals(new String(name, StandardCharsets.UTF_8))
+          || digestLength != hashFunction.getLength()) {
+          throw new IOException("Hash cache was written for another hash function");
+        }
+        final long records = header + 2 * Integer.BYTES;
+        if (count < 0 || records + (long) count * (DIGEST + digestLength) > file.size()) {
+          throw new IOException("Hash cache is corrupted");
+        }
+        return new HashCache(cacheFile, hashFunction, file, records, count);
+      } catch (IndexOutOfBoundsException e) {
+        throw new IOException("Hash cache is truncated", e);
+      }
+    }
+
+    /**
+     * @param cacheFile    location the cache is saved to
+     * @param hashFunction function used to hash files
+     * @return cache without entries
+     */
+    public static HashCache empty(final Path cacheFile, final HashFunction hashFunction) {
+      return new HashCache(cacheFile, hashFunction, null, 0, 0);
+    }
+
+    private int compare(final int record, final byte[] path) {
+      final long base = records + (long) record * recordSize;
+      final long offset = paths + file.getLong(base + PATH_OFFSET);
+      final int length = file.getInt(base + PATH_LENGTH);
+      final int common = Math.min(length, path.length);
+      for (int index = 0; index < common; index++) {
+        final int diff = Byte.toUnsignedInt(file.get(offset + index)) - Byte.toUnsignedInt(path[index]);
+        if (diff != 0) {
+          return diff;
+        }
+      }
+      return length - path.length;
+    }
+
+    private int find(final byte[] path) {
+      int low = 0;
+      int high = count - 1;
+      while (low <= high) {
+        final int middle = (low + high) >>> 1;
+        final int diff = compare(middle, path);
+        if (diff == 0) {
+          return middle;
+        } else if (diff < 0) {
+          low = middle + 1;
+        } else {
+          high = middle - 1;
+        }
+      }
+      return -1;
+    }
+
+    private byte[] lookup(final byte[] path, final long device, final long inode, final long size,
+                          final long modified) {
+      try {
+        final int record = find(path);
+        if (record < 0) {
+          return null;
+        }
+        final long base = records + (long) record * recordSize;
+        if (file.getLong(base + DEVICE) != device || file.getLong(base + INODE) != inode
+          || file.getLong(base + SIZE) != size || file.getLong(base + MODIFIED) != modified) {
+          return null;
+        }
+        final byte[] digest = new byte[hashFunction.getLength()];
+        file.get(base + DIGEST, digest, 0, digest.length);
+        return digest;
+      } catch (IndexOutOfBoundsException e) {
+        // a record pointing out of the file is corrupted, its file is hashed again
+        return null;
+      }
+    }
+
+    @Override
+    public byte[] hash(final Path file, final BasicFileAttributes attrs) {
+      if (attrs == null || !attrs.isRegularFile()) {
+        return hashFunction.hash(file);
+      }
+      final byte[] path = file.toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8);
+      final String key = FileKeys.getKey(attrs);
+      final long device = FileKeys.getDevice(key, 0);
+      final long inode = FileKeys.getInode(key, 0);
+      final long size = attrs.size();
+      final long modified = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+      final long hashedMillis = System.currentTimeMillis();
+
+      byte[] digest = lookup(path, device, inode, size, modified);
+      if (digest == null) {
+        try {
+          digest = hashFunction.digest(file);
+        } catch (IOException | UnsupportedOperationException e) {
+          return hashFunction.getEmptyHash();
+        }
+      }
+      if (TimeUnit.NANOSECONDS.toMillis(modified) < hashedMillis - WalkDaemon.RACY_WINDOW_MILLIS) {
+        visit(ByteBuffer.allocate(path.length + VISITED_FIELDS + digest.length)
+          .put(path).putLong(device).putLong(inode).putLong(size).putLong(modified).put(digest).array());
+      }
+      return digest;
+    }
+
+    private void visit(final byte[] record) {
+      if (visitFailure != null) {
+        return;
+      }
+      try {
+        visited.add(record);
+      } catch (IOException e) {
+        visitFailure = e;
+      }
+    }
+
+    private static int compare(final byte[] first, final int firstLength, final byte[] second, final int secondLength) {
+      final int common = Math.min(firstLength, secondLength);
+      for (int index = 0; index < common; index++) {
+        final int diff = Byte.toUnsignedInt(first[index]) - Byte.toUnsignedInt(second[index]);
+        if (diff != 0) {
+          return diff;
+        }
+      }
+      return firstLength - secondLength;
+    }
+
+    /**
+     * Replaces the cache file with entries of files hashed since the cache was opened
+     * and deletes the spilled runs
+     *
+     * @throws IOException if the cache could not be written
+     */
+    public void save() throws IOException {
+      final Path parent = cacheFile.toAbsolutePath().getParent();
+      final String prefix = cacheFile.getFileName().toString();
+      final Path temporary = Files.createTempFile(parent, prefix, ".tmp");
+      final Path pathsFile = Files.createTempFile(parent, prefix, ".paths");
+      try (RecordSorter sorter = visited) {
+        if (visitFailure != null) {
+          throw visitFailure;
+        }
+        final int digestLength = hashFunction.getLength();
+        final int trailer = VISITED_FIELDS + digestLength;
+        final byte[] name = hashFunction.getName().getBytes(StandardCharsets.UTF_8);
+        final long countPosition = Integer.BYTES + Short.BYTES + name.length + Integer.BYTES;
+        int unique = 0;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+          final DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024));
+          out.writeInt(MAGIC);
+          out.writeShort(name.length);
+          out.write(name);
+          out.writeInt(digestLength);
+          out.writeInt(0);
+
+          try (
+            RecordSorter.Cursor cursor = sorter.sorted();
+            DataOutputStream pathsOut = new DataOutputStream(
+              new BufferedOutputStream(Files.newOutputStream(pathsFile), 64 * 1024))
+          ) {
+            byte[] previous = null;
+            long offset = 0;
+            byte[] record;
+            while ((record = cursor.next()) != null) {
+              final int pathLength = record.length - trailer;
+              if (previous != null && compare(previous, previous.length - trailer, record, pathLength) == 0) {
+                continue;
+              }
+              out.writeLong(offset);
+              out.writeInt(pathLength);
+              out.write(record, pathLength, trailer);
+              pathsOut.write(record, 0, pathLength);
+              offset += pathLength;
+              unique++;
+              previous = record;
+            }
+          }
+          Files.copy(pathsFile, out);
+          out.flush();
+
+          final ByteBuffer countBuffer = ByteBuffer.allocate(Integer.BYTES).putInt(0, unique);
+          while (countBuffer.hasRemaining()) {
+            channel.write(countBuffer, countPosition + countBuffer.position());
+          }
+        }
+        Files.move(temporary, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(temporary);
+        Files.deleteIfExists(pathsFile);
+      }
+    }
+}
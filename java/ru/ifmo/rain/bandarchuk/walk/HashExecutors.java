@@ -0,0 +1,110 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executors running hash tasks of the walk
+ */
+public final class HashExecutors {
+
+    private HashExecutors() {
+    }
+
+    /**
+     * @param threads number of threads
+     * @return pool of a fixed number of platform threads
+     */
+    public static ExecutorService fixed(final int threads) {
+      return Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * Starts a new thread for every task, virtual if the runtime supports virtual threads
+     * and a platform one otherwise
+     *
+     * @param limit maximal number of tasks running at once, submission blocks above it
+     * @return thread-per-task executor
+     */
+    public static ExecutorService threadPerTask(final int limit) {
+      return new LimitedExecutor(newThreadPerTaskExecutor(), limit);
+    }
+
+    private static ExecutorService newThreadPerTaskExecutor() {
+      try {
+        return (ExecutorService) MethodHandles.publicLookup()
+          .findStatic(Executors.class, "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class))
+          .invokeExact();
+      } catch (NoSuchMethodException | IllegalAccessException | UnsupportedOperationException e) {
+        return Executors.newCachedThreadPool();
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    private static class LimitedExecutor extends AbstractExecutorService {
+      private final ExecutorService executor;
+      private final Semaphore permits;
+
+      LimitedExecutor(final ExecutorService executor, final int limit) {
+        this.executor = executor;
+        this.permits = new Semaphore(limit);
+      }
+
+      @Override
+      public void execute(final Runnable command) {
+        try {
+          permits.acquire();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new RejectedExecutionException("Interrupted while waiting for a free slot", e);
+        }
+        try {
+          executor.execute(() -> {
+            try {
+              command.run();
+            } finally {
+              permits.release();
+            }
+          });
+        } catch (RejectedExecutionException e) {
+          permits.release();
+          throw e;
+        }
+      }
+
+      @Override
+      public void shutdown() {
+        executor.shutdown();
+      }
+
+      @Override
+      public List<Runnable> shutdownNow() {
+        return executor.shutdownNow();
+      }
+
+      @Override
+      public boolean isShutdown() {
+        return executor.isShutdown();
+      }
+
+      @Override
+      public boolean isTerminated() {
+        return executor.isTerminated();
+      }
+
+      @Override
+      public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+      }
+    }
+}
@@ -0,0 +1,59 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Hash algorithm used by the walk to fingerprint file contents
+ */
+public interface HashFunction {
+
+    /**
+     * @return name of the algorithm as accepted by {@code --hash}
+     */
+    String getName();
+
+    /**
+     * @return digest length in bytes, the printed hash is twice as many hex digits wide
+     */
+    int getLength();
+
+    /**
+     * @return fresh hashing state
+     */
+    Hasher newHasher();
+
+    /**
+     * Hashes contents of the file
+     *
+     * @param file file to hash
+     * @return digest of the contents or {@link #getEmptyHash() zero digest} if the file could not be read
+     */
+    default byte[] hash(final Path file) {
+      try {
+        return digest(file);
+      } catch (IOException | UnsupportedOperationException e) {
+        return getEmptyHash();
+      }
+    }
+
+    /**
+     * Hashes contents of the file, reporting read errors
+     *
+     * @param file file to hash
+     * @return digest of the contents
+     * @throws IOException if the file could not be read
+     */
+    default byte[] digest(final Path file) throws IOException {
+      final Hasher hasher = newHasher();
+      FileContent.read(file, hasher);
+      return hasher.digest();
+    }
+
+    /**
+     * @return digest printed for files that could not be read
+     */
+    default byte[] getEmptyHash() {
+      return new byte[getLength()];
+    }
+}
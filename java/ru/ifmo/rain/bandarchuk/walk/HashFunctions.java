@@ -0,0 +1,48 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Registry of hash algorithms available to the walk
+ */
+public final class HashFunctions {
+
+    public static final HashFunction DEFAULT = new FNV32Hash();
+
+    private static final Map<String, HashFunction> FUNCTIONS = new LinkedHashMap<>();
+
+    static {
+      register(DEFAULT);
+      register(new FNV64Hash());
+      register(new CRC32CHash());
+      register(new XXHash64());
+      register(new SHA256Hash());
+    }
+
+    private HashFunctions() {
+    }
+
+    private static void register(final HashFunction function) {
+      FUNCTIONS.put(function.getName(), function);
+    }
+
+    /**
+     * @param name name of the algorithm
+     * @return algorithm registered under the name
+     * @throws IllegalArgumentException if there is no such algorithm
+     */
+    public static HashFunction forName(final String name) {
+      final HashFunction function = FUNCTIONS.get(name);
+      if (function == null) {
+        throw new IllegalArgumentException("Unknown hash function: " + name + ", expected one of " + FUNCTIONS.keySet());
+      }
+      return function;
+    }
+
+    public static Collection<HashFunction> getAll() {
+      return Collections.unmodifiableCollection(FUNCTIONS.values());
+    }
+}
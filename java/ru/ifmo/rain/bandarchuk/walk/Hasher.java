@@ -0,0 +1,21 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Incremental state of a {@link HashFunction}
+ */
+public interface Hasher {
+
+    /**
+     * Feeds remaining bytes of the buffer, leaving its position at the limit
+     *
+     * @param bytes next portion of the data
+     */
+    void update(ByteBuffer bytes);
+
+    /**
+     * @return digest of all bytes fed so far, big-endian
+     */
+    byte[] digest();
+}
@@ -0,0 +1,77 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Batch of hash tasks started in the order of inode numbers of their files
+ * <br>
+ * On rotational storage inode order approximates on-disk order much better than traversal order.
+ * Inode numbers are taken from the file keys of the walked attributes, see {@link FileKeys}; tasks of files
+ * without such keys keep their relative order after the others.
+ */
+class InodeBatch {
+
+    private final int size;
+    private final List<Task> tasks = new ArrayList<>();
+
+    private static class Task {
+      private final long inode;
+      private final Runnable runnable;
+      private final Executor executor;
+
+      Task(final long inode, final Runnable runnable, final Executor executor) {
+        this.inode = inode;
+        this.runnable = runnable;
+        this.executor = executor;
+      }
+    }
+
+    /**
+     * @param size number of tasks collected before they are started
+     */
+    InodeBatch(final int size) {
+      if (size <= 0) {
+        throw new IllegalArgumentException("Batch size should be positive: " + size);
+      }
+      this.size = size;
+    }
+
+    /**
+     * @return inode number of the file, or {@link Long#MAX_VALUE} if it is unknown
+     */
+    static long getInode(final BasicFileAttributes attrs) {
+      return FileKeys.getInode(FileKeys.getKey(attrs), Long.MAX_VALUE);
+    }
+
+    /**
+     * Adds the task, starting the batch if it is full
+     *
+     * @param attrs    attributes of the file hashed by the task
+     * @param runnable task to start
+     * @param executor executor to start the task on
+     */
+    void add(final BasicFileAttributes attrs, final Runnable runnable, final Executor executor) {
+      tasks.add(new Task(getInode(attrs), runnable, executor));
+      if (tasks.size() >= size) {
+        flush();
+      }
+    }
+
+    /**
+     * Starts all collected tasks in inode order
+     */
+    void flush() {
+      tasks.sort(Comparator.comparingLong(task -> task.inode));
+      try {
+        for (Task task : tasks) {
+          task.executor.execute(task.runnable);
+        }
+      } finally {
+        tasks.clear();
+      }
+    }
+}
@@ -0,0 +1,61 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies with power-of-two buckets
+ * <br>
+ * Bucket {@code i > 0} counts latencies in {@code [2^(i-1), 2^i)} nanoseconds, bucket {@code 0}
+ * counts zero latencies. Recording costs a single {@link LongAdder} increment.
+ */
+class LatencyHistogram {
+
+    private static final int BUCKETS = Long.SIZE;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+    LatencyHistogram() {
+      for (int index = 0; index < BUCKETS; index++) {
+        buckets[index] = new LongAdder();
+      }
+    }
+
+    void record(final long nanos) {
+      buckets[nanos <= 0 ? 0 : BUCKETS - Long.numberOfLeadingZeros(nanos)].increment();
+    }
+
+    /**
+     * @return counts of all buckets
+     */
+    long[] getCounts() {
+      final long[] counts = new long[BUCKETS];
+      for (int index = 0; index < BUCKETS; index++) {
+        counts[index] = buckets[index].sum();
+      }
+      return counts;
+    }
+
+    /**
+     * @param fraction fraction of recorded latencies, between {@code 0} and {@code 1}
+     * @return upper bound in nanoseconds of the bucket holding the quantile, {@code 0} if nothing was recorded
+     */
+    long getQuantile(final double fraction) {
+      final long[] counts = getCounts();
+      long total = 0;
+      for (long count : counts) {
+        total += count;
+      }
+      if (total == 0) {
+        return 0;
+      }
+      final long rank = Math.max(1, (long) Math.ceil(total * fraction));
+      long seen = 0;
+      for (int index = 0; index < BUCKETS; index++) {
+        seen += counts[index];
+        if (seen >= rank) {
+          return index == 0 ? 0 : index == BUCKETS - 1 ? Long.MAX_VALUE : 1L << index;
+        }
+      }
+      return Long.MAX_VALUE;
+    }
+}
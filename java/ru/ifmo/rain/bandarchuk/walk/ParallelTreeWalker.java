@@ -0,0 +1,184 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitor;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Replacement of {@link Files#walkFileTree(Path, FileVisitor)} that lists directories in parallel
+ * <br>
+ * Every directory is read by its own fork-join task. While the children of a directory are visited,
+ * the next {@code 2 * parallelism} subdirectories among them are listed ahead, so at most that many
+ * listings per level of the current path are held in memory, however far the visitor lags behind.
+ * The visitor is still invoked on the calling thread, in the same order and with the same arguments
+ * as {@code walkFileTree} without following links would use.
+ */
+public class ParallelTreeWalker {
+
+    private static final int PREFETCH_FACTOR = 2;
+
+    private final ForkJoinPool pool;
+    private final WalkMetrics metrics;
+    private final WalkFilter filter;
+    private final int window;
+
+    /**
+     * @param pool    pool to list directories on
+     * @param metrics metrics to add directory read times to
+     * @param filter  filter whose excluded directories are not listed
+     */
+    public ParallelTreeWalker(final ForkJoinPool pool, final WalkMetrics metrics, final WalkFilter filter) {
+      this.pool = pool;
+      this.metrics = metrics;
+      this.filter = filter;
+      this.window = PREFETCH_FACTOR * pool.getParallelism();
+    }
+
+    private static class Node {
+      private final Path path;
+      private final BasicFileAttributes attrs;
+      private final IOException exception;
+      private final boolean listable;
+      private DirectoryTask directory = null;
+
+      Node(final Path path, final BasicFileAttributes attrs, final IOException exception, final boolean listable) {
+        this.path = path;
+        this.attrs = attrs;
+        this.exception = exception;
+        this.listable = listable;
+      }
+    }
+
+    private static class Listing {
+      private final List<Node> children = new ArrayList<>();
+      private IOException openException = null;
+      private IOException iterationException = null;
+    }
+
+    private class DirectoryTask extends RecursiveTask<Listing> {
+      private static final long serialVersionUID = 1L;
+
+      private final Path root;
+      private final Path directory;
+
+      DirectoryTask(final Path root, final Path directory) {
+        this.root = root;
+        this.directory = directory;
+      }
+
+      @Override
+      protected Listing compute() {
+        final long start = System.nanoTime();
+        final Listing listing = new Listing();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+          for (Path child : stream) {
+            listing.children.add(createNode(root, child));
+          }
+        } catch (DirectoryIteratorException e) {
+          listing.iterationException = e.getCause();
+        } catch (IOException e) {
+          listing.openException = e;
+        } finally {
+          metrics.addDirectoryRead(System.nanoTime() - start);
+        }
+        return listing;
+      }
+    }
+
+    /**
+     * Reads attributes of the path, marking directories not excluded by the filter as listable
+     */
+    private Node createNode(final Path root, final Path path) {
+      try {
+        final BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        return new Node(path, attrs, null, attrs.isDirectory() && !filter.isExcluded(root, path));
+      } catch (IOException e) {
+        return new Node(path, null, e, false);
+      }
+    }
+
+    /**
+     * Starts listing the node if it is a listable directory that is not being listed yet
+     *
+     * @return whether the listing was started
+     */
+    private boolean start(final Path root, final Node node) {
+      if (!node.listable || node.directory != null) {
+        return false;
+      }
+      node.directory = new DirectoryTask(root, node.path);
+      pool.execute(node.directory);
+      return true;
+    }
+
+    /**
+     * Walks the file tree rooted at the given path
+     *
+     * @param start   root of the tree
+     * @param visitor visitor to invoke for each file
+     * @throws IOException if thrown by the visitor
+     */
+    public void walk(final Path start, final FileVisitor<? super Path> visitor) throws IOException {
+      visit(start, createNode(start, start), visitor);
+    }
+
+    private FileVisitResult visit(final Path root, final Node node, final FileVisitor<? super Path> visitor)
+      throws IOException {
+      if (node.exception != null) {
+        return visitor.visitFileFailed(node.path, node.exception);
+      }
+      if (!node.attrs.isDirectory()) {
+        return visitor.visitFile(node.path, node.attrs);
+      }
+
+      start(root, node);
+      Listing listing = node.directory == null ? null : node.directory.join();
+      if (listing != null && listing.openException != null) {
+        return visitor.visitFileFailed(node.path, listing.openException);
+      }
+      final FileVisitResult result = visitor.preVisitDirectory(node.path, node.attrs);
+      if (result != FileVisitResult.CONTINUE) {
+        return result == FileVisitResult.SKIP_SUBTREE ? FileVisitResult.CONTINUE : result;
+      }
+      if (listing == null) {
+        // excluded directory the visitor still wants to enter
+        listing = pool.invoke(new DirectoryTask(root, node.path));
+        if (listing.openException != null) {
+          return visitor.postVisitDirectory(node.path, listing.openException);
+        }
+      }
+      final List<Node> children = listing.children;
+      int next = 0;
+      int started = 0;
+      for (int index = 0; index < children.size(); index++) {
+        while (next < children.size() && started < window) {
+          if (start(root, children.get(next++))) {
+            started++;
+          }
+        }
+        final Node child = children.get(index);
+        final FileVisitResult childResult = visit(root, child, visitor);
+        if (child.directory != null) {
+          // the listing of a visited subdirectory is not needed anymore
+          child.directory = null;
+          started--;
+        }
+        if (childResult == FileVisitResult.TERMINATE) {
+          return childResult;
+        } else if (childResult == FileVisitResult.SKIP_SIBLINGS) {
+          break;
+        }
+      }
+      return visitor.postVisitDirectory(node.path, listing.iterationException);
+    }
+}
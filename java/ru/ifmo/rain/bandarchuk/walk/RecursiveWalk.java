@@ -1,19 +1,63 @@
 package ru.ifmo.rain.bandarchuk.walk;
 
 import ru.ifmo.rain.bandarchuk.walk.exceptions.RecursiveWalkException;
+import ru.ifmo.rain.bandarchuk.walk.snapshot.SnapshotWriter;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 public class RecursiveWalk {
 
+    private static final String USAGE = "Usage: <input file path> <output file path>"
+      + " [--threads=<count>] [--hash=<algorithm>]"
+      + " [--cache=<cache file>] [--fork-join] [--virtual-threads[=<limit>]]"
+      + " [--duplicates] [--dedup] [--watch] [--merkle] [--snapshot=<snapshot file>] [--metrics]"
+      + " [--checkpoint=<journal> [--checkpoint-interval=<seconds>] [--resume]] [--inode-order[=<batch>]]"
+      + " [--store-limits=<store>:<threads>[:<buffer KiB>][,...]]"
+      + " [--include=<pattern>]... [--exclude=<pattern>]... [--archives[=<depth>]]"
+      + " [--sampled[=<blocks>] [--escalate=<previous output>]]";
+
+    private static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+    private static final int THREAD_PER_FILE_QUEUE_FACTOR = 4;
+    private static final int DEFAULT_VIRTUAL_THREADS = 256;
+    private static final int DEFAULT_CHECKPOINT_INTERVAL = 60;
+    private static final int DEFAULT_INODE_BATCH = 512;
+    private static final int DEFAULT_ARCHIVE_DEPTH = 1;
+    private static final int DEFAULT_SAMPLED_BLOCKS = 8;
+
     private final Path inputFilePath;
     private final Path outputFilePath;
+    private int threads = DEFAULT_THREADS;
+    private HashFunction hashFunction = HashFunctions.DEFAULT;
+    private Path cacheFile = null;
+    private boolean parallelTraversal = false;
+    private int threadPerFileLimit = 0;
+    private boolean duplicates = false;
+    private boolean dedupStatistics = false;
+    private boolean watch = false;
+    private boolean directoryDigests = false;
+    private Path snapshotFile = null;
+    private Path journal = null;
+    private long checkpointIntervalMillis = TimeUnit.SECONDS.toMillis(DEFAULT_CHECKPOINT_INTERVAL);
+    private boolean resume = false;
+    private int inodeBatch = 0;
+    private StoreLimits storeLimits = null;
+    private WalkFilter filter = WalkFilter.ALL;
+    private int archiveDepth = 0;
+    private int sampledBlocks = 0;
+    private Path previousOutput = null;
+
+    private final WalkMetrics metrics = new WalkMetrics();
 
     public RecursiveWalk(final String inputFile, final String outputFile) throws RecursiveWalkException {
       try {
@@ -33,30 +77,363 @@ public class RecursiveWalk {
       }
     }
 
+    public RecursiveWalk setThreads(final int threads) {
+      if (threads <= 0) {
+        throw new IllegalArgumentException("Number of hashing threads should be positive: " + threads);
+      }
+      this.threads = threads;
+      return this;
+    }
+
+    public RecursiveWalk setHashFunction(final HashFunction hashFunction) {
+      this.hashFunction = hashFunction;
+      return this;
+    }
+
+    public RecursiveWalk setCacheFile(final Path cacheFile) {
+      this.cacheFile = cacheFile;
+      return this;
+    }
+
+    /**
+     * Lists directories in parallel with {@link ParallelTreeWalker} instead of {@link Files#walkFileTree}
+     *
+     * @param parallelTraversal whether to list directories in parallel
+     * @return this walk
+     */
+    public RecursiveWalk setParallelTraversal(final boolean parallelTraversal) {
+      this.parallelTraversal = parallelTraversal;
+      return this;
+    }
+
+    /**
+     * Hashes every file on its own thread, virtual where the runtime supports it,
+     * instead of on a fixed pool of {@link #setThreads(int) threads}
+     *
+     * @param limit maximal number of files hashed at once, {@code 0} to use the fixed pool
+     * @return this walk
+     */
+    public RecursiveWalk setThreadPerFileLimit(final int limit) {
+      if (limit < 0) {
+        throw new IllegalArgumentException("Limit of concurrently hashed files should be non-negative: " + limit);
+      }
+      this.threadPerFileLimit = limit;
+      return this;
+    }
+
+    /**
+     * Writes groups of files with equal contents instead of hashes of all files
+     *
+     * @param duplicates whether to search for duplicates
+     * @return this walk
+     * @see DuplicateFinder
+     */
+    public RecursiveWalk setDuplicates(final boolean duplicates) {
+      this.duplicates = duplicates;
+      return this;
+    }
+
+    /**
+     * Writes shares of data duplicated at the level of content-defined chunks
+     * per directory and in total, instead of hashes of all files
+     *
+     * @param dedupStatistics whether to write dedup statistics
+     * @return this walk
+     * @see DedupStatistics
+     */
+    public RecursiveWalk setDedupStatistics(final boolean dedupStatistics) {
+      this.dedupStatistics = dedupStatistics;
+      return this;
+    }
+
+    /**
+     * Keeps watching the walked directories after the walk and writes changes as delta records
+     *
+     * @param watch whether to watch for changes
+     * @return this walk
+     * @see WalkDaemon
+     */
+    public RecursiveWalk setWatch(final boolean watch) {
+      this.watch = watch;
+      return this;
+    }
+
+    /**
+     * Writes a digest of every walked directory after its contents
+     *
+     * @param directoryDigests whether to write directory digests
+     * @return this walk
+     * @see WalkPipeline#withDirectoryDigests()
+     */
+    public RecursiveWalk setDirectoryDigests(final boolean directoryDigests) {
+      this.directoryDigests = directoryDigests;
+      return this;
+    }
+
+    /**
+     * Additionally writes the output as a binary snapshot once the walk is over
+     *
+     * @param snapshotFile location of the snapshot, {@code null} to write the text output only
+     * @return this walk
+     * @see SnapshotWriter
+     */
+    public RecursiveWalk setSnapshotFile(final Path snapshotFile) {
+      this.snapshotFile = snapshotFile;
+      return this;
+    }
+
+    /**
+     * Periodically records the position of the walk in a journal, forcing the output to disk first
+     *
+     * @param journal        location of the journal, {@code null} to walk without checkpoints
+     * @param intervalMillis minimal time between checkpoints
+     * @return this walk
+     * @see WalkCheckpoint
+     */
+    public RecursiveWalk setCheckpoint(final Path journal, final long intervalMillis) {
+      if (intervalMillis < 0) {
+        throw new IllegalArgumentException("Checkpoint interval should be non-negative: " + intervalMillis);
+      }
+      this.journal = journal;
+      this.checkpointIntervalMillis = intervalMillis;
+      return this;
+    }
+
+    /**
+     * Continues the walk from the checkpoint in the journal, appending to the output written before it.
+     * The input file and the walked trees are expected to be unchanged since the checkpoint.
+     *
+     * @param resume whether to resume the walk
+     * @return this walk
+     */
+    public RecursiveWalk setResume(final boolean resume) {
+      this.resume = resume;
+      return this;
+    }
+
+    /**
+     * Starts hashing files in batches sorted by inode number instead of in traversal order
+     *
+     * @param batchSize number of files in a batch, {@code 0} to hash in traversal order
+     * @return this walk
+     * @see WalkPipeline#withInodeOrder(int)
+     */
+    public RecursiveWalk setInodeOrder(final int batchSize) {
+      if (batchSize < 0) {
+        throw new IllegalArgumentException("Inode order batch size should be non-negative: " + batchSize);
+      }
+      this.inodeBatch = batchSize;
+      return this;
+    }
+
+    /**
+     * Hashes files of the listed file stores on separate pools with their own sizes and read buffers
+     *
+     * @param storeLimits limits of file stores, {@code null} to hash all files on the same pool
+     * @return this walk
+     * @see StoreExecutors
+     */
+    public RecursiveWalk setStoreLimits(final StoreLimits storeLimits) {
+      this.storeLimits = storeLimits;
+      return this;
+    }
+
+    /**
+     * Skips excluded files and does not descend into excluded directories
+     *
+     * @param filter filter of walked files and directories
+     * @return this walk
+     */
+    public RecursiveWalk setFilter(final WalkFilter filter) {
+      this.filter = filter;
+      return this;
+    }
+
+    /**
+     * Hashes entries of zip and jar archives after the archives themselves
+     *
+     * @param depth number of archive nesting levels to expand, {@code 0} to hash archives as plain files
+     * @return this walk
+     * @see WalkPipeline#withArchives(int)
+     */
+    public RecursiveWalk setArchiveDepth(final int depth) {
+      if (depth < 0) {
+        throw new IllegalArgumentException("Archive depth should be non-negative: " + depth);
+      }
+      this.archiveDepth = depth;
+      return this;
+    }
+
+    /**
+     * Fingerprints large files from their size, head, tail and evenly spaced blocks
+     * instead of hashing them in full, writing such fingerprints as {@code ~<hash> <path>}
+     *
+     * @param blocks number of blocks sampled between the head and the tail, {@code 0} to hash all files in full
+     * @return this walk
+     * @see SampledFingerprint
+     */
+    public RecursiveWalk setSampledBlocks(final int blocks) {
+      if (blocks < 0) {
+        throw new IllegalArgumentException("Number of sampled blocks should be non-negative: " + blocks);
+      }
+      this.sampledBlocks = blocks;
+      return this;
+    }
+
+    /**
+     * Additionally hashes in full the sampled files whose fingerprints are missing from the previous output
+     * or differ from it
+     *
+     * @param previousOutput output of a previous sampled walk, {@code null} to never hash sampled files in full
+     * @return this walk
+     */
+    public RecursiveWalk setEscalation(final Path previousOutput) {
+      this.previousOutput = previousOutput;
+      return this;
+    }
+
+    /**
+     * Checks the sampling options and reads fingerprints of the previous output
+     *
+     * @return fingerprint of large files, or {@code null} to hash all files in full
+     */
+    private SampledFingerprint createSampling(final FileHasher fileHasher) throws RecursiveWalkException {
+      if (sampledBlocks == 0) {
+        if (previousOutput != null) {
+          throw new RecursiveWalkException("Escalation requires a sampled walk");
+        }
+        return null;
+      }
+      if (watch || duplicates || dedupStatistics || directoryDigests || snapshotFile != null) {
+        throw new RecursiveWalkException("Sampled fingerprints are only supported for walks writing file hashes");
+      }
+      if (previousOutput == null) {
+        return new SampledFingerprint(hashFunction, fileHasher, sampledBlocks, null, metrics);
+      }
+      try {
+        return new SampledFingerprint(hashFunction, fileHasher, sampledBlocks,
+          SampledFingerprint.readPrevious(previousOutput, hashFunction.getLength()), metrics);
+      } catch (IOException e) {
+        throw new RecursiveWalkException("Error while reading previous output at: '" + previousOutput + "'", e);
+      }
+    }
+
+    private WalkConsumer createConsumer(final FileHasher fileHasher, final ResultWriter resultWriter,
+                                        final SampledFingerprint sampling) throws IOException {
+      if (watch) {
+        final WalkDaemon daemon = new WalkDaemon(HashExecutors.fixed(threads), hashFunction, resultWriter);
+        daemon.setMetrics(metrics);
+        return daemon;
+      }
+      if (duplicates) {
+        final DuplicateFinder finder = new DuplicateFinder(HashExecutors.fixed(threads), hashFunction, resultWriter);
+        finder.setMetrics(metrics);
+        return finder;
+      }
+      if (dedupStatistics) {
+        final DedupStatistics statistics = new DedupStatistics(threads, resultWriter);
+        statistics.setMetrics(metrics);
+        return statistics;
+      }
+      final WalkPipeline pipeline = threadPerFileLimit > 0
+        ? new WalkPipeline(HashExecutors.threadPerTask(threadPerFileLimit),
+            threadPerFileLimit * THREAD_PER_FILE_QUEUE_FACTOR, hashFunction, fileHasher, resultWriter)
+        : new WalkPipeline(threads, hashFunction, fileHasher, resultWriter);
+      if (journal != null) {
+        pipeline.withCheckpoints(journal, checkpointIntervalMillis);
+      }
+      if (inodeBatch > 0) {
+        pipeline.withInodeOrder(inodeBatch);
+      }
+      if (storeLimits != null) {
+        pipeline.withStoreExecutors(new StoreExecutors(storeLimits));
+      }
+      if (archiveDepth > 0) {
+        pipeline.withArchives(archiveDepth);
+        pipeline.setMetrics(metrics);
+      }
+      if (sampling != null) {
+        pipeline.withSampling(sampling);
+      }
+      return directoryDigests ? pipeline.withDirectoryDigests() : pipeline;
+    }
+
+    public WalkMetrics getMetrics() {
+      return metrics;
+    }
+
     public void walk() throws RecursiveWalkException {
+      if (watch && snapshotFile != null) {
+        throw new RecursiveWalkException("Snapshot cannot be written for a watched walk");
+      }
+      if (dedupStatistics && (watch || duplicates || directoryDigests || snapshotFile != null)) {
+        throw new RecursiveWalkException("Dedup statistics cannot be combined with other output modes");
+      }
+      if ((watch || duplicates || dedupStatistics) && archiveDepth > 0) {
+        throw new RecursiveWalkException("Archives are only expanded for walks writing file hashes");
+      }
+      final WalkCheckpoint checkpoint = readCheckpoint();
+      final HashCache cache = cacheFile == null ? null : openCache();
+      final FileHasher fileHasher = metrics.timed(cache == null ? (file, attrs) -> hashFunction.hash(file) : cache);
+      final SampledFingerprint sampling = createSampling(fileHasher);
+      final ForkJoinPool traversalPool = parallelTraversal ? new ForkJoinPool(threads) : null;
+      metrics.start();
+      metrics.register();
       try (
         BufferedReader bufferedReader = Files.newBufferedReader(inputFilePath);
-        PrintWriter printWriter = new PrintWriter(Files.newBufferedWriter(outputFilePath))
+        ResultWriter resultWriter = checkpoint == null
+          ? new ResultWriter(outputFilePath)
+          : new ResultWriter(outputFilePath, checkpoint.getOffset());
+        WalkConsumer consumer = createConsumer(fileHasher, resultWriter, sampling)
       ) {
+        resultWriter.setMetrics(metrics);
         String nextLine;
         String previousLine = null;
-        FileVisitor visitor = new FileVisitor(printWriter);
+        FileVisitor visitor = new FileVisitor(consumer, metrics, filter);
+        ParallelTreeWalker treeWalker = parallelTraversal
+          ? new ParallelTreeWalker(traversalPool, metrics, filter)
+          : null;
+        WalkPipeline pipeline = consumer instanceof WalkPipeline ? (WalkPipeline) consumer : null;
+        long lineIndex = -1;
         try {
           while ((nextLine = bufferedReader.readLine()) != null) {
+            lineIndex++;
+            if (checkpoint != null && lineIndex < checkpoint.getLine()) {
+              continue;
+            }
+            if (pipeline != null) {
+              pipeline.startLine(lineIndex);
+              if (checkpoint != null && lineIndex == checkpoint.getLine()) {
+                pipeline.skip(checkpoint.getEntries());
+              }
+            }
             try {
               previousLine = nextLine;
               final Path path = Paths.get(nextLine);
-              if (Files.isDirectory(path)) {
-                Files.walkFileTree(path, visitor);
+              final BasicFileAttributes attrs = readAttributes(path);
+              if (attrs != null && attrs.isDirectory()) {
+                if (treeWalker != null) {
+                  treeWalker.walk(path, visitor);
+                } else {
+                  Files.walkFileTree(path, visitor);
+                }
               } else {
-                printWriter.printf("%08x %s%n", FNV32Hash.getHash(path), path);
+                if (attrs == null) {
+                  metrics.addFailedOpen();
+                } else {
+                  metrics.addFile(attrs);
+                }
+                consumer.submit(path, attrs);
               }
             } catch (InvalidPathException e) {
-              printWriter.printf("%08x %s%n", 0, nextLine);
+              consumer.submitFailed(nextLine);
             } catch (IOException e) {
               throw new RecursiveWalkException("Error while walking the file tree from: '" + nextLine + "'");
             }
           }
+          if (consumer instanceof WalkDaemon) {
+            ((WalkDaemon) consumer).watch();
+          }
         } catch (IOException e) {
           final String message;
           message = previousLine == null
@@ -77,16 +454,128 @@ public class RecursiveWalk {
         } else {
           throw new RecursiveWalkException("Error while working with input/output files");
         }
+      } finally {
+        if (traversalPool != null) {
+          traversalPool.shutdownNow();
+        }
+        metrics.finish();
+        metrics.unregister();
+      }
+      if (cache != null) {
+        try {
+          cache.save();
+        } catch (IOException e) {
+          throw new RecursiveWalkException("Error while writing hash cache at: '" + cacheFile + "'", e);
+        }
+      }
+      if (snapshotFile != null) {
+        try {
+          new SnapshotWriter(hashFunction.getLength(), snapshotFile.toAbsolutePath().getParent())
+            .addManifest(outputFilePath).write(snapshotFile);
+        } catch (IOException e) {
+          throw new RecursiveWalkException("Error while writing snapshot at: '" + snapshotFile + "'", e);
+        }
+      }
+    }
+
+    /**
+     * Opens the hash cache, reporting an unusable one and starting with an empty cache instead
+     *
+     * @return opened cache
+     */
+    private HashCache openCache() {
+      try {
+        return HashCache.open(cacheFile, hashFunction);
+      } catch (IOException e) {
+        System.err.println("Ignoring hash cache at: '" + cacheFile + "': " + e.getMessage());
+        return HashCache.empty(cacheFile, hashFunction);
+      }
+    }
+
+    /**
+     * Checks the checkpoint options and reads the checkpoint to resume from
+     *
+     * @return checkpoint to resume from, or {@code null} to start a new walk
+     */
+    private WalkCheckpoint readCheckpoint() throws RecursiveWalkException {
+      if (journal == null) {
+        if (resume) {
+          throw new RecursiveWalkException("Walk cannot be resumed without a checkpoint journal");
+        }
+        return null;
+      }
+      if (watch || duplicates || dedupStatistics || directoryDigests) {
+        throw new RecursiveWalkException("Checkpoints are only supported for walks writing file hashes");
+      }
+      try {
+        if (resume) {
+          return WalkCheckpoint.read(journal);
+        }
+        Files.deleteIfExists(journal);
+        return null;
+      } catch (IOException e) {
+        throw new RecursiveWalkException("Error while reading checkpoint journal at: '" + journal + "'", e);
+      }
+    }
+
+    private static BasicFileAttributes readAttributes(final Path path) {
+      try {
+        return Files.readAttributes(path, BasicFileAttributes.class);
+      } catch (IOException e) {
+        return null;
+      }
+    }
+
+    private static WalkFilter compileFilter(final WalkArguments arguments) throws RecursiveWalkException {
+      try {
+        return WalkFilter.compile(arguments.getOptions("include"), arguments.getOptions("exclude"));
+      } catch (IllegalArgumentException e) {
+        throw new RecursiveWalkException("Invalid filter pattern: " + e.getMessage(), e);
       }
     }
 
     public static void main(String[] args) {
       try {
-        if (args.length != 2 || args[0] == null || args[1] == null) {
-          throw new RecursiveWalkException("Usage: <input file path> <output file path>");
+        if (args == null || Arrays.stream(args).anyMatch(Objects::isNull)) {
+          throw new RecursiveWalkException(USAGE);
+        }
+        WalkArguments arguments = new WalkArguments(args);
+        List<String> files = arguments.getPositional();
+        if (files.size() != 2) {
+          throw new RecursiveWalkException(USAGE);
         }
-        RecursiveWalk recursiveWalk = new RecursiveWalk(args[0], args[1]);
+        RecursiveWalk recursiveWalk = new RecursiveWalk(files.get(0), files.get(1))
+          .setThreads(arguments.getPositiveInt("threads", DEFAULT_THREADS))
+          .setHashFunction(arguments.getOption("hash", HashFunctions::forName, HashFunctions.DEFAULT))
+          .setCacheFile(arguments.getOption("cache", Paths::get, null))
+          .setParallelTraversal(arguments.hasFlag("fork-join"))
+          .setThreadPerFileLimit(arguments.hasFlag("virtual-threads")
+            ? arguments.getPositiveInt("virtual-threads", DEFAULT_VIRTUAL_THREADS)
+            : 0)
+          .setDuplicates(arguments.hasFlag("duplicates"))
+          .setDedupStatistics(arguments.hasFlag("dedup"))
+          .setWatch(arguments.hasFlag("watch"))
+          .setDirectoryDigests(arguments.hasFlag("merkle"))
+          .setSnapshotFile(arguments.getOption("snapshot", Paths::get, null))
+          .setCheckpoint(arguments.getOption("checkpoint", Paths::get, null),
+            TimeUnit.SECONDS.toMillis(arguments.getPositiveInt("checkpoint-interval", DEFAULT_CHECKPOINT_INTERVAL)))
+          .setResume(arguments.hasFlag("resume"))
+          .setInodeOrder(arguments.hasFlag("inode-order")
+            ? arguments.getPositiveInt("inode-order", DEFAULT_INODE_BATCH)
+            : 0)
+          .setStoreLimits(arguments.getOption("store-limits", StoreLimits::parse, null))
+          .setFilter(compileFilter(arguments))
+          .setArchiveDepth(arguments.hasFlag("archives")
+            ? arguments.getPositiveInt("archives", DEFAULT_ARCHIVE_DEPTH)
+            : 0)
+          .setSampledBlocks(arguments.hasFlag("sampled")
+            ? arguments.getPositiveInt("sampled", DEFAULT_SAMPLED_BLOCKS)
+            : 0)
+          .setEscalation(arguments.getOption("escalate", Paths::get, null));
         recursiveWalk.walk();
+        if (arguments.hasFlag("metrics")) {
+          System.err.println(recursiveWalk.getMetrics());
+        }
       } catch (RecursiveWalkException e) {
         System.out.println(e.getMessage());
       }
@@ -0,0 +1,228 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes {@code <hex hash> <path>} lines in UTF-8 straight into a reusable direct buffer
+ * <br>
+ * Produces the same bytes as {@code printf("%08x %s%n", ...)} through a UTF-8 writer
+ * without allocating per line. Not thread-safe.
+ */
+public class ResultWriter implements Closeable {
+
+    private static final int BUFF_SIZE = 64 * 1024;
+
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFF_SIZE);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+
+    private WalkMetrics metrics;
+
+    private char[] chars = new char[256];
+    private CharBuffer charBuffer = CharBuffer.wrap(chars);
+
+    public ResultWriter(final Path file) throws IOException {
+      this(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.WRITE));
+    }
+
+    public ResultWriter(final FileChannel channel) {
+      this.channel = channel;
+    }
+
+    /**
+     * Opens the file for appending after its first {@code offset} bytes, dropping the rest
+     *
+     * @param file   file to append to
+     * @param offset length of the output to keep
+     * @throws IOException if the file could not be opened or is shorter than {@code offset}
+     */
+    public ResultWriter(final Path file, final long offset) throws IOException {
+      this(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE));
+      try {
+        if (channel.size() < offset) {
+          throw new IOException("Output " + file + " is shorter than " + offset + " bytes");
+        }
+        channel.truncate(offset);
+        channel.position(offset);
+      } catch (IOException e) {
+        channel.close();
+        throw e;
+      }
+    }
+
+    /**
+     * @param metrics metrics to add the time of writes to the file to
+     */
+    void setMetrics(final WalkMetrics metrics) {
+      this.metrics = metrics;
+    }
+
+    public void write(final byte[] hash, final String path) throws IOException {
+      ensureRemaining(hash.length * 2 + 1);
+      writeLine(hash, path);
+    }
+
+    /**
+     * Writes a line with a marker character before the hash
+     *
+     * @param marker ASCII marker of the line
+     * @param hash   hash to write
+     * @param path   path to write
+     * @throws IOException if the line could not be written
+     */
+    public void write(final char marker, final byte[] hash, final String path) throws IOException {
+      ensureRemaining(hash.length * 2 + 2);
+      buffer.put((byte) marker);
+      writeLine(hash, path);
+    }
+
+    /**
+     * Writes a line with a marker character before the hash and a path given as UTF-8 bytes
+     *
+     * @param marker     ASCII marker of the line
+     * @param hash       hash to write
+     * @param path       buffer holding the path
+     * @param pathLength length of the path in the buffer
+     * @throws IOException if the line could not be written
+     */
+    public void write(final char marker, final byte[] hash, final byte[] path, final int pathLength)
+      throws IOException {
+      ensureRemaining(hash.length * 2 + 2);
+      buffer.put((byte) marker);
+      writeHash(hash);
+      int written = 0;
+      while (written < pathLength) {
+        ensureRemaining(1);
+        final int chunk = Math.min(buffer.remaining(), pathLength - written);
+        buffer.put(path, written, chunk);
+        written += chunk;
+      }
+      ensureRemaining(LINE_SEPARATOR.length);
+      buffer.put(LINE_SEPARATOR);
+    }
+
+    private void writeHash(final byte[] hash) {
+      for (byte b : hash) {
+        buffer.put(HEX_DIGITS[(b >> 4) & 0xf]).put(HEX_DIGITS[b & 0xf]);
+      }
+      buffer.put((byte) ' ');
+    }
+
+    private void writeLine(final byte[] hash, final String path) throws IOException {
+      writeHash(hash);
+      writeUtf8(path);
+      ensureRemaining(LINE_SEPARATOR.length);
+      buffer.put(LINE_SEPARATOR);
+    }
+
+    /**
+     * Writes a line of free text
+     *
+     * @param text text of the line, without a line separator
+     * @throws IOException if the line could not be written
+     */
+    public void writeText(final String text) throws IOException {
+      writeUtf8(text);
+      ensureRemaining(LINE_SEPARATOR.length);
+      buffer.put(LINE_SEPARATOR);
+    }
+
+    /**
+     * Writes an empty line
+     *
+     * @throws IOException if the line could not be written
+     */
+    public void writeSeparator() throws IOException {
+      ensureRemaining(LINE_SEPARATOR.length);
+      buffer.put(LINE_SEPARATOR);
+    }
+
+    private void writeUtf8(final String text) throws IOException {
+      final int length = text.length();
+      if (chars.length < length) {
+        chars = new char[Math.max(length, chars.length * 2)];
+        charBuffer = CharBuffer.wrap(chars);
+      }
+      text.getChars(0, length, chars, 0);
+      charBuffer.limit(length).position(0);
+
+      encoder.reset();
+      CoderResult result;
+      while ((result = encoder.encode(charBuffer, buffer, true)).isOverflow()) {
+        flushBuffer();
+      }
+      if (result.isError()) {
+        result.throwException();
+      }
+      while (encoder.flush(buffer).isOverflow()) {
+        flushBuffer();
+      }
+    }
+
+    private void ensureRemaining(final int bytes) throws IOException {
+      if (buffer.remaining() < bytes) {
+        flushBuffer();
+      }
+    }
+
+    private void flushBuffer() throws IOException {
+      final long start = System.nanoTime();
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+      if (metrics != null) {
+        metrics.addFlush(System.nanoTime() - start);
+      }
+    }
+
+    /**
+     * Writes buffered lines to the file
+     *
+     * @throws IOException if the lines could not be written
+     */
+    public void flush() throws IOException {
+      flushBuffer();
+    }
+
+    /**
+     * Writes buffered lines to the file and forces them to the storage device
+     *
+     * @throws IOException if the lines could not be written
+     */
+    public void force() throws IOException {
+      flushBuffer();
+      channel.force(false);
+    }
+
+    /**
+     * @return number of bytes written so far, including buffered ones
+     * @throws IOException if the position of the file could not be read
+     */
+    public long position() throws IOException {
+      return channel.position() + buffer.position();
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        flushBuffer();
+      } finally {
+        channel.close();
+      }
+    }
+}
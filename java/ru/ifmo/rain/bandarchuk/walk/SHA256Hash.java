@@ -0,0 +1,41 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public class SHA256Hash implements HashFunction {
+
+    private static final String ALGORITHM = "SHA-256";
+
+    @Override
+    public String getName() {
+      return "sha256";
+    }
+
+    @Override
+    public int getLength() {
+      return 32;
+    }
+
+    @Override
+    public Hasher newHasher() {
+      final MessageDigest messageDigest;
+      try {
+        messageDigest = MessageDigest.getInstance(ALGORITHM);
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException(ALGORITHM + " is not supported by the runtime", e);
+      }
+      return new Hasher() {
+        @Override
+        public void update(final ByteBuffer bytes) {
+          messageDigest.update(bytes);
+        }
+
+        @Override
+        public byte[] digest() {
+          return messageDigest.digest();
+        }
+      };
+    }
+}
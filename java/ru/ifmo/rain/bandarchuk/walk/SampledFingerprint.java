@@ -0,0 +1,129 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fingerprint of a large file from its size and a few blocks of its contents
+ * <br>
+ * The size, the head, the tail and evenly spaced blocks between them are fed to the hash function
+ * with positional reads, so the cost does not depend on the file size. Sampled fingerprints are
+ * written as {@code ~<hash> <path>}. Files not larger than the sampled blocks together are hashed
+ * in full and written as usual. If a previous output is given, a file whose sampled fingerprint
+ * is missing from it or differs is also hashed in full, written as a usual line after the sampled one.
+ */
+final class SampledFingerprint {
+
+    static final char MARKER = '~';
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    private final HashFunction hashFunction;
+    private final FileHasher fileHasher;
+    private final int blocks;
+    private final Map<String, byte[]> previous;
+    private final WalkMetrics metrics;
+
+    /**
+     * @param hashFunction function to hash samples with
+     * @param fileHasher   hasher of full contents of escalated files
+     * @param blocks       number of blocks sampled between the head and the tail
+     * @param previous     sampled fingerprints of the previous output, {@code null} to never escalate
+     * @param metrics      metrics to add the time of sampling to
+     */
+    SampledFingerprint(final HashFunction hashFunction, final FileHasher fileHasher, final int blocks,
+                       final Map<String, byte[]> previous, final WalkMetrics metrics) {
+      this.hashFunction = hashFunction;
+      this.fileHasher = fileHasher;
+      this.blocks = blocks;
+      this.previous = previous;
+      this.metrics = metrics;
+    }
+
+    /**
+     * @param attrs attributes of the file or {@code null} if they are unknown
+     * @return whether the file is large enough to be sampled
+     */
+    boolean isSampled(final BasicFileAttributes attrs) {
+      return attrs != null && attrs.isRegularFile() && attrs.size() > (blocks + 2L) * BLOCK_SIZE;
+    }
+
+    private byte[] sample(final Path file, final long size) throws IOException {
+      final long[] positions = new long[blocks + 2];
+      final long stride = (size - BLOCK_SIZE) / (blocks + 1);
+      for (int i = 0; i <= blocks; i++) {
+        positions[i] = stride * i;
+      }
+      positions[blocks + 1] = size - BLOCK_SIZE;
+      final Hasher hasher = hashFunction.newHasher();
+      hasher.update(ByteBuffer.allocate(Long.BYTES).putLong(0, size));
+      FileContent.readRanges(file, positions, BLOCK_SIZE, hasher);
+      return hasher.digest();
+    }
+
+    /**
+     * @param file  file to fingerprint
+     * @param attrs attributes of the file, {@link #isSampled(BasicFileAttributes) sampled}
+     * @return sampled entry of the file, followed by its full hash if it is escalated
+     */
+    List<WalkEntry> fingerprint(final Path file, final BasicFileAttributes attrs) {
+      final String path = file.toString();
+      final byte[] hash;
+      try {
+        hash = metrics.timeHash(() -> sample(file, attrs.size()));
+      } catch (IOException e) {
+        return Collections.singletonList(WalkEntry.marked(MARKER, path, hashFunction.getEmptyHash()));
+      }
+      final WalkEntry sampled = WalkEntry.marked(MARKER, path, hash);
+      if (previous == null || Arrays.equals(previous.get(path), hash)) {
+        return Collections.singletonList(sampled);
+      }
+      return Arrays.asList(sampled, WalkEntry.completed(path, fileHasher.hash(file, attrs)));
+    }
+
+    /**
+     * Reads sampled fingerprints from a previous output, ignoring all other lines
+     *
+     * @param output     previous output
+     * @param hashLength digest length of the hash function
+     * @return sampled fingerprints by path
+     * @throws IOException if the output could not be read
+     */
+    static Map<String, byte[]> readPrevious(final Path output, final int hashLength) throws IOException {
+      final Map<String, byte[]> fingerprints = new HashMap<>();
+      try (BufferedReader reader = Files.newBufferedReader(output)) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          final int pathStart = 2 * hashLength + 2;
+          if (line.length() > pathStart && line.charAt(0) == MARKER && line.charAt(pathStart - 1) == ' ') {
+            final byte[] hash = parseHex(line, 1, hashLength);
+            if (hash != null) {
+              fingerprints.put(line.substring(pathStart), hash);
+            }
+          }
+        }
+      }
+      return fingerprints;
+    }
+
+    private static byte[] parseHex(final String line, final int start, final int length) {
+      final byte[] hash = new byte[length];
+      for (int i = 0; i < length; i++) {
+        final int high = Character.digit(line.charAt(start + 2 * i), 16);
+        final int low = Character.digit(line.charAt(start + 2 * i + 1), 16);
+        if (high < 0 || low < 0) {
+          return null;
+        }
+        hash[i] = (byte) (high << 4 | low);
+      }
+      return hash;
+    }
+}
@@ -0,0 +1,95 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Separate hash executors for file stores with configured {@link StoreLimits limits}
+ * <br>
+ * Files of every limited store are hashed on a pool of its own, so a slow store cannot occupy
+ * threads of a fast one; if a buffer size is given, files of the store are read through buffers
+ * of that size instead of being mapped. Stores are looked up once per directory.
+ * Not thread-safe: files are routed by the traversing thread.
+ */
+public class StoreExecutors {
+
+    private static final int CACHED_DIRECTORIES = 1024;
+
+    private final StoreLimits limits;
+    private final Map<FileStore, ExecutorService> executors = new HashMap<>();
+    private final Map<Path, ExecutorService> byDirectory = new LinkedHashMap<Path, ExecutorService>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<Path, ExecutorService> eldest) {
+        return size() > CACHED_DIRECTORIES;
+      }
+    };
+
+    /**
+     * @param limits limits of file stores
+     */
+    public StoreExecutors(final StoreLimits limits) {
+      this.limits = limits;
+    }
+
+    private static ExecutorService create(final FileStore store, final StoreLimits.Limit limit) {
+      final AtomicInteger threads = new AtomicInteger();
+      final ThreadFactory factory = runnable -> {
+        return new Thread(() -> {
+          if (limit.getBufferSize() > 0) {
+            FileContent.useThreadBuffer(limit.getBufferSize());
+          }
+          runnable.run();
+        }, "walk-" + store.type() + "-" + threads.incrementAndGet());
+      };
+      return Executors.newFixedThreadPool(limit.getThreads(), factory);
+    }
+
+    private ExecutorService lookup(final Path path) {
+      final FileStore store;
+      try {
+        store = Files.getFileStore(path);
+      } catch (IOException | SecurityException e) {
+        return null;
+      }
+      if (!executors.containsKey(store)) {
+        final StoreLimits.Limit limit = limits.find(store);
+        executors.put(store, limit == null ? null : create(store, limit));
+      }
+      return executors.get(store);
+    }
+
+    /**
+     * @param file file to hash
+     * @return executor of the store of the file, or {@code null} if the store has no limit
+     */
+    public ExecutorService forFile(final Path file) {
+      final Path parent = file.getParent();
+      final Path directory = parent == null ? file : parent;
+      if (byDirectory.containsKey(directory)) {
+        return byDirectory.get(directory);
+      }
+      final ExecutorService executor = lookup(directory);
+      byDirectory.put(directory, executor);
+      return executor;
+    }
+
+    /**
+     * Stops executors of all stores
+     */
+    public void shutdownNow() {
+      for (ExecutorService executor : executors.values()) {
+        if (executor != null) {
+          executor.shutdownNow();
+        }
+      }
+    }
+}
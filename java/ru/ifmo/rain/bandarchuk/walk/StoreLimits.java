@@ -0,0 +1,101 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import java.nio.file.FileStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Hashing limits of file stores, written as {@code <store>:<threads>[:<buffer KiB>]}
+ * <br>
+ * {@code <store>} is matched against the type of a file store ({@code ext4}, {@code nfs},
+ * {@code tmpfs}, ...) and then against its name, so it may itself contain colons,
+ * as in {@code server:/export:2}.
+ *
+ * @see StoreExecutors
+ */
+public class StoreLimits {
+
+    private final List<Limit> limits;
+
+    static class Limit {
+      private final String store;
+      private final int threads;
+      private final int bufferSize;
+
+      Limit(final String store, final int threads, final int bufferSize) {
+        this.store = store;
+        this.threads = threads;
+        this.bufferSize = bufferSize;
+      }
+
+      int getThreads() {
+        return threads;
+      }
+
+      /**
+       * @return read buffer size in bytes, {@code 0} for the default reading strategy
+       */
+      int getBufferSize() {
+        return bufferSize;
+      }
+    }
+
+    private StoreLimits(final List<Limit> limits) {
+      this.limits = Collections.unmodifiableList(limits);
+    }
+
+    private static boolean isNumber(final String value) {
+      return !value.isEmpty() && value.chars().allMatch(c -> c >= '0' && c <= '9');
+    }
+
+    private static int parsePositive(final String value, final String spec) {
+      final int result = Integer.parseInt(value);
+      if (result <= 0) {
+        throw new IllegalArgumentException("Non-positive value in store limit '" + spec + "'");
+      }
+      return result;
+    }
+
+    /**
+     * @param specs comma-separated {@code <store>:<threads>[:<buffer KiB>]} limits
+     * @return parsed limits
+     * @throws IllegalArgumentException if a limit is malformed
+     */
+    public static StoreLimits parse(final String specs) {
+      final List<Limit> limits = new ArrayList<>();
+      for (String spec : specs.split(",")) {
+        final String[] parts = spec.split(":", -1);
+        final int numbers = parts.length >= 3 && isNumber(parts[parts.length - 1]) && isNumber(parts[parts.length - 2])
+          ? 2
+          : 1;
+        if (parts.length <= numbers || !isNumber(parts[parts.length - numbers])) {
+          throw new IllegalArgumentException("Invalid store limit '" + spec + "'");
+        }
+        final String store = String.join(":", Arrays.asList(parts).subList(0, parts.length - numbers));
+        final int threads = parsePositive(parts[parts.length - numbers], spec);
+        final int bufferSize = numbers == 2 ? Math.multiplyExact(parsePositive(parts[parts.length - 1], spec), 1024) : 0;
+        limits.add(new Limit(store, threads, bufferSize));
+      }
+      return new StoreLimits(limits);
+    }
+
+    /**
+     * @param store file store to look up
+     * @return limit of the store, or {@code null} if it has none
+     */
+    Limit find(final FileStore store) {
+      for (Limit limit : limits) {
+        if (limit.store.equals(store.type())) {
+          return limit;
+        }
+      }
+      for (Limit limit : limits) {
+        if (limit.store.equals(store.name())) {
+          return limit;
+        }
+      }
+      return null;
+    }
+}
@@ -0,0 +1,85 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import ru.ifmo.rain.bandarchuk.walk.exceptions.RecursiveWalkException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Command line of the walk tools: positional arguments followed or interleaved
+ * with {@code --name=value} options and {@code --name} flags
+ */
+public class WalkArguments {
+
+    private static final String OPTION_PREFIX = "--";
+
+    private final List<String> positional = new ArrayList<>();
+    private final Map<String, String> options = new HashMap<>();
+    private final Map<String, List<String>> values = new HashMap<>();
+
+    public WalkArguments(final String[] args) throws RecursiveWalkException {
+      for (String arg : args) {
+        if (arg == null) {
+          throw new RecursiveWalkException("Null argument");
+        }
+        if (arg.startsWith(OPTION_PREFIX)) {
+          final int separator = arg.indexOf('=');
+          if (separator < 0) {
+            options.put(arg.substring(OPTION_PREFIX.length()), null);
+          } else {
+            final String name = arg.substring(OPTION_PREFIX.length(), separator);
+            options.put(name, arg.substring(separator + 1));
+            values.computeIfAbsent(name, key -> new ArrayList<>()).add(arg.substring(separator + 1));
+          }
+        } else {
+          positional.add(arg);
+        }
+      }
+    }
+
+    public List<String> getPositional() {
+      return positional;
+    }
+
+    public boolean hasFlag(final String name) {
+      return options.containsKey(name);
+    }
+
+    public String getOption(final String name, final String defaultValue) {
+      final String value = options.get(name);
+      return value == null ? defaultValue : value;
+    }
+
+    /**
+     * @param name name of a repeatable option
+     * @return values of all occurrences of the option in the order of the command line
+     */
+    public List<String> getOptions(final String name) {
+      return values.getOrDefault(name, Collections.emptyList());
+    }
+
+    public <T> T getOption(final String name, final Function<String, T> mapper, final T defaultValue)
+      throws RecursiveWalkException {
+      final String value = options.get(name);
+      if (value == null) {
+        return defaultValue;
+      }
+      try {
+        return mapper.apply(value);
+      } catch (IllegalArgumentException e) {
+        throw new RecursiveWalkException("Invalid value of --" + name + ": '" + value + "'", e);
+      }
+    }
+
+    public int getPositiveInt(final String name, final int defaultValue) throws RecursiveWalkException {
+      final int value = getOption(name, Integer::parseInt, defaultValue);
+      if (value <= 0) {
+        throw new RecursiveWalkException("Value of --" + name + " should be positive: " + value);
+      }
+      return value;
+    }
+}
@@ -0,0 +1,105 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Position of an interrupted walk: the input line being walked, the number of its entries
+ * already written and the length of the output holding them
+ * <br>
+ * The journal is replaced atomically, so it always describes output that was forced to disk before it.
+ */
+public class WalkCheckpoint {
+
+    private static final int MAGIC = 0x57434b31;
+
+    private final long line;
+    private final long entries;
+    private final long offset;
+
+    /**
+     * @param line    index of the input line, starting from {@code 0}
+     * @param entries number of entries of the line written to the output
+     * @param offset  length of the output
+     */
+    public WalkCheckpoint(final long line, final long entries, final long offset) {
+      this.line = line;
+      this.entries = entries;
+      this.offset = offset;
+    }
+
+    public long getLine() {
+      return line;
+    }
+
+    public long getEntries() {
+      return entries;
+    }
+
+    public long getOffset() {
+      return offset;
+    }
+
+    /**
+     * @param journal journal to read
+     * @return checkpoint from the journal, or {@code null} if there is no journal
+     * @throws IOException if the journal could not be read or is corrupted
+     */
+    public static WalkCheckpoint read(final Path journal) throws IOException {
+      try (DataInputStream in = new DataInputStream(Files.newInputStream(journal))) {
+        if (in.readInt() != MAGIC) {
+          throw new IOException("Not a walk checkpoint journal: " + journal);
+        }
+        final WalkCheckpoint checkpoint = new WalkCheckpoint(in.readLong(), in.readLong(), in.readLong());
+        if (checkpoint.line < 0 || checkpoint.entries < 0 || checkpoint.offset < 0) {
+          throw new IOException("Corrupted walk checkpoint journal: " + journal);
+        }
+        return checkpoint;
+      } catch (NoSuchFileException e) {
+        return null;
+      } catch (EOFException e) {
+        throw new IOException("Truncated walk checkpoint journal: " + journal, e);
+      }
+    }
+
+    /**
+     * Replaces the journal with this checkpoint
+     *
+     * @param journal journal to write
+     * @throws IOException if the journal could not be written
+     */
+    public void write(final Path journal) throws IOException {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (DataOutputStream out = new DataOutputStream(bytes)) {
+        out.writeInt(MAGIC);
+        out.writeLong(line);
+        out.writeLong(entries);
+        out.writeLong(offset);
+      }
+
+      final Path parent = journal.toAbsolutePath().getParent();
+      final Path temporary = Files.createTempFile(parent, journal.getFileName().toString(), ".tmp");
+      try {
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+          final ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+          while (buffer.hasRemaining()) {
+            channel.write(buffer);
+          }
+          channel.force(true);
+        }
+        Files.move(temporary, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(temporary);
+      }
+    }
+}
@@ -0,0 +1,52 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Receiver of files found by the walk, in traversal order
+ */
+public interface WalkConsumer extends Closeable {
+
+    /**
+     * @param file  found file
+     * @param attrs attributes read during traversal or {@code null} if they are unknown
+     * @throws IOException if the file could not be accepted
+     */
+    void submit(Path file, BasicFileAttributes attrs) throws IOException;
+
+    /**
+     * Called before files of the directory are submitted
+     *
+     * @param dir   directory entered by the traversal
+     * @param attrs attributes of the directory
+     * @throws IOException if the directory could not be accepted
+     */
+    default void enterDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+    }
+
+    /**
+     * Called after all files of the directory are submitted
+     *
+     * @param dir directory left by the traversal
+     * @throws IOException if the directory could not be accepted
+     */
+    default void exitDirectory(Path dir) throws IOException {
+    }
+
+    /**
+     * @param path file or input line that could not be visited
+     * @throws IOException if the path could not be accepted
+     */
+    void submitFailed(String path) throws IOException;
+
+    /**
+     * Finishes processing of all submitted files
+     *
+     * @throws IOException if the results could not be produced
+     */
+    @Override
+    void close() throws IOException;
+}
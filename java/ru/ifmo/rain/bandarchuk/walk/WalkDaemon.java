@@ -0,0 +1,346 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Keeps a live hash manifest of the walked files
+ * <br>
+ * The initial walk is written as usual. Then every walked directory is watched and changes are
+ * written as delta records: {@code +<hash> <path>} for a created file, {@code *<hash> <path>}
+ * for a modified one and {@code -<hash> <path>} with the zero hash for a deleted one. Only the
+ * files named by events are rehashed, each of them unconditionally; after an overflow the subtree
+ * of the overflowing directory is rescanned, skipping files whose size and modification time
+ * did not change. As modification times may be as coarse as two seconds, a file modified less than
+ * {@value #RACY_WINDOW_MILLIS} ms before it was last hashed is never skipped, since it could have been
+ * rewritten within the same tick.
+ */
+public class WalkDaemon implements WalkConsumer {
+
+    private static final int MAX_PENDING = 1024;
+    /**
+     * Files modified less than this many milliseconds before they were hashed may change
+     * within the same modification time tick
+     */
+    static final long RACY_WINDOW_MILLIS = 3000;
+
+    private final ExecutorService executor;
+    private final HashFunction hashFunction;
+    private final ResultWriter resultWriter;
+    private final WatchService watcher;
+
+    /**
+     * Metrics of the walk, discarded unless {@link #setMetrics(WalkMetrics) set}
+     */
+    private WalkMetrics metrics = new WalkMetrics();
+
+    private final NavigableMap<String, ManifestEntry> manifest = new TreeMap<>();
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+    private final Set<Path> watchedDirectories = new HashSet<>();
+    private final Set<Path> watchedFiles = new HashSet<>();
+
+    private final List<Pending> pending = new ArrayList<>();
+
+    private static class ManifestEntry {
+      private final byte[] hash;
+      private final long size;
+      private final FileTime modified;
+      private final long hashedMillis;
+
+      ManifestEntry(final byte[] hash, final BasicFileAttributes attrs, final long hashedMillis) {
+        this.hash = hash;
+        this.size = attrs.size();
+        this.modified = attrs.lastModifiedTime();
+        this.hashedMillis = hashedMillis;
+      }
+
+      boolean isUpToDate(final BasicFileAttributes attrs) {
+        return size == attrs.size() && modified.equals(attrs.lastModifiedTime())
+          && modified.toMillis() < hashedMillis - RACY_WINDOW_MILLIS;
+      }
+    }
+
+    private static class Pending {
+      private final Path file;
+      private final BasicFileAttributes attrs;
+      private final long submittedMillis;
+      private final Future<byte[]> hash;
+      private final char marker;
+
+      Pending(final Path file, final BasicFileAttributes attrs, final Future<byte[]> hash, final char marker) {
+        this.file = file;
+        this.attrs = attrs;
+        this.submittedMillis = System.currentTimeMillis();
+        this.hash = hash;
+        this.marker = marker;
+      }
+    }
+
+    /**
+     * @param executor     executor to hash files on, shut down when the daemon is closed
+     * @param hashFunction function to hash files with
+     * @param resultWriter destination of the manifest and delta records
+     * @throws IOException if the watch service could not be created
+     */
+    public WalkDaemon(final ExecutorService executor, final HashFunction hashFunction, final ResultWriter resultWriter)
+      throws IOException {
+      this.executor = executor;
+      this.hashFunction = hashFunction;
+      this.resultWriter = resultWriter;
+      this.watcher = FileSystems.getDefault().newWatchService();
+    }
+
+    /**
+     * @param metrics metrics to add the time of hashing files to
+     */
+    void setMetrics(final WalkMetrics metrics) {
+      this.metrics = metrics;
+    }
+
+    private void register(final Path dir) throws IOException {
+      if (watchedDirectories.add(dir)) {
+        keys.put(dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+          StandardWatchEventKinds.ENTRY_MODIFY), dir);
+      }
+    }
+
+    @Override
+    public void enterDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException {
+      register(dir);
+    }
+
+    @Override
+    public void submit(final Path file, final BasicFileAttributes attrs) throws IOException {
+      submit(file, attrs, ' ');
+    }
+
+    private void submit(final Path file, final BasicFileAttributes attrs, final char marker) throws IOException {
+      final Path parent = file.getParent();
+      if (parent != null && !watchedDirectories.contains(parent) && watchedFiles.add(file)) {
+        keys.put(parent.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+          StandardWatchEventKinds.ENTRY_MODIFY), parent);
+      }
+      if (attrs == null) {
+        submitFailed(file.toString());
+        return;
+      }
+      pending.add(new Pending(file, attrs, executor.submit(() -> digest(file)), marker));
+      if (pending.size() >= MAX_PENDING) {
+        drain();
+      }
+    }
+
+    @Override
+    public void submitFailed(final String path) throws IOException {
+      drain();
+      resultWriter.write(hashFunction.getEmptyHash(), path);
+    }
+
+    /**
+     * @return digest of the file, or {@code null} if it could not be read
+     */
+    private byte[] digest(final Path file) {
+      try {
+        return metrics.timeHash(() -> hashFunction.digest(file));
+      } catch (IOException | UnsupportedOperationException e) {
+        return null;
+      }
+    }
+
+    private void drain() throws IOException {
+      for (Pending value : pending) {
+        byte[] hash;
+        try {
+          hash = value.hash.get();
+        } catch (ExecutionException e) {
+          throw new IOException("Error while hashing " + value.file, e.getCause());
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while hashing files");
+        }
+        final String path = value.file.toString();
+        if (hash == null) {
+          if (value.marker != ' ' && Files.notExists(value.file, LinkOption.NOFOLLOW_LINKS)) {
+            // deleted between the event and hashing
+            delete(path);
+            continue;
+          }
+          hash = hashFunction.getEmptyHash();
+        }
+        final ManifestEntry previous = manifest.put(path, new ManifestEntry(hash, value.attrs, value.submittedMillis));
+        if (value.marker == ' ') {
+          resultWriter.write(hash, path);
+        } else if (previous == null) {
+          resultWriter.write('+', hash, path);
+        } else if (!Arrays.equals(previous.hash, hash)) {
+          resultWriter.write('*', hash, path);
+        }
+      }
+      pending.clear();
+    }
+
+    private void delete(final String path) throws IOException {
+      if (manifest.remove(path) != null) {
+        resultWriter.write('-', hashFunction.getEmptyHash(), path);
+      }
+    }
+
+    private NavigableMap<String, ManifestEntry> subtree(final String prefix) {
+      return manifest.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    private void deleteSubtree(final Path dir) throws IOException {
+      final String prefix = dir.toString() + dir.getFileSystem().getSeparator();
+      final List<String> deleted = new ArrayList<>(subtree(prefix).keySet());
+      for (String path : deleted) {
+        delete(path);
+      }
+    }
+
+    /**
+     * Rescans the subtree: registers new directories, rehashes new and changed files and deletes missing ones
+     */
+    private void rescan(final Path root) throws IOException {
+      final Set<String> seen = new HashSet<>();
+      Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException {
+          register(dir);
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+          final String path = file.toString();
+          seen.add(path);
+          final ManifestEntry entry = manifest.get(path);
+          if (entry == null || !entry.isUpToDate(attrs)) {
+            submit(file, attrs, '*');
+          }
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(final Path file, final IOException exc) {
+          return FileVisitResult.CONTINUE;
+        }
+      });
+      drain();
+
+      final String prefix = root.toString() + root.getFileSystem().getSeparator();
+      final List<String> missing = new ArrayList<>();
+      for (String path : subtree(prefix).keySet()) {
+        if (!seen.contains(path)) {
+          missing.add(path);
+        }
+      }
+      for (String path : missing) {
+        delete(path);
+      }
+    }
+
+    private void update(final Path dir, final Path child) throws IOException {
+      if (!watchedDirectories.contains(dir) && !watchedFiles.contains(child)) {
+        return;
+      }
+      final BasicFileAttributes attrs;
+      try {
+        attrs = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+      } catch (IOException e) {
+        delete(child.toString());
+        deleteSubtree(child);
+        return;
+      }
+      if (attrs.isDirectory()) {
+        if (watchedDirectories.contains(dir)) {
+          rescan(child);
+        }
+        return;
+      }
+      submit(child, attrs, '*');
+    }
+
+    /**
+     * Writes the initial manifest and then delta records until the thread is interrupted
+     * or no watched directory is left
+     *
+     * @throws IOException if records could not be written
+     */
+    public void watch() throws IOException {
+      drain();
+      resultWriter.flush();
+      try {
+        while (!keys.isEmpty()) {
+          final WatchKey key = watcher.take();
+          final Path dir = keys.get(key);
+          if (dir == null) {
+            key.cancel();
+            continue;
+          }
+
+          final Set<Path> changed = new LinkedHashSet<>();
+          boolean overflow = false;
+          for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+              overflow = true;
+            } else {
+              changed.add(dir.resolve((Path) event.context()));
+            }
+          }
+          if (overflow && watchedDirectories.contains(dir)) {
+            rescan(dir);
+          } else {
+            for (Path child : changed) {
+              update(dir, child);
+            }
+          }
+          drain();
+
+          if (!key.reset()) {
+            keys.remove(key);
+            watchedDirectories.remove(dir);
+          }
+          resultWriter.flush();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ClosedWatchServiceException ignored) {
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        drain();
+      } finally {
+        executor.shutdownNow();
+        watcher.close();
+      }
+    }
+}
@@ -0,0 +1,129 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+class WalkEntry {
+
+    private final String path;
+    private final Future<byte[]> hash;
+    private final FutureTask<byte[]> deferred;
+    private Future<List<WalkEntry>> group;
+    private Closeable resource;
+    private char marker = 0;
+    private long line;
+    private long ordinal;
+
+    WalkEntry(final String path, final Future<byte[]> hash) {
+      this.path = path;
+      this.hash = hash;
+      this.deferred = null;
+    }
+
+    private WalkEntry(final String path, final FutureTask<byte[]> deferred) {
+      this.path = path;
+      this.hash = deferred;
+      this.deferred = deferred;
+    }
+
+    /**
+     * @param path path of the entry
+     * @param hash computation of the hash, run by the writer when it reaches the entry
+     * @return entry computed by the writer
+     */
+    static WalkEntry deferred(final String path, final Callable<byte[]> hash) {
+      return new WalkEntry(path, new FutureTask<>(hash));
+    }
+
+    /**
+     * @param group computation of entries written in place of this one
+     * @return entry expanding into several results
+     */
+    static WalkEntry group(final Future<List<WalkEntry>> group) {
+      final WalkEntry entry = completed(null, null);
+      entry.group = group;
+      return entry;
+    }
+
+    /**
+     * @param resource resource used by the preceding entries
+     * @return entry closing the resource once the preceding entries are written, writing nothing itself
+     */
+    static WalkEntry release(final Closeable resource) {
+      final WalkEntry entry = completed(null, null);
+      entry.resource = resource;
+      return entry;
+    }
+
+    /**
+     * @param marker ASCII marker written before the hash
+     * @param path   path of the entry
+     * @param hash   hash of the entry
+     * @return completed entry written with a marker
+     */
+    static WalkEntry marked(final char marker, final String path, final byte[] hash) {
+      final WalkEntry entry = completed(path, hash);
+      entry.marker = marker;
+      return entry;
+    }
+
+    static WalkEntry completed(final String path, final byte[] hash) {
+      FutureTask<byte[]> task = new FutureTask<>(() -> hash);
+      task.run();
+      return new WalkEntry(path, task);
+    }
+
+    /**
+     * @param line    index of the input line the entry was found from
+     * @param ordinal number of entries of the line preceding this one
+     */
+    void setPosition(final long line, final long ordinal) {
+      this.line = line;
+      this.ordinal = ordinal;
+    }
+
+    long getLine() {
+      return line;
+    }
+
+    long getOrdinal() {
+      return ordinal;
+    }
+
+    /**
+     * @return entries to write in place of this one, or {@code null} if it is a single result
+     */
+    List<WalkEntry> getGroup() throws InterruptedException, ExecutionException {
+      return group == null ? null : group.get();
+    }
+
+    /**
+     * @return marker written before the hash, or {@code 0} if there is none
+     */
+    char getMarker() {
+      return marker;
+    }
+
+    Closeable getResource() {
+      return resource;
+    }
+
+    Future<byte[]> getFuture() {
+      return hash;
+    }
+
+    String getPath() {
+      return path;
+    }
+
+    byte[] getHash() throws InterruptedException, ExecutionException {
+      if (deferred != null) {
+        deferred.run();
+      }
+      return hash.get();
+    }
+}
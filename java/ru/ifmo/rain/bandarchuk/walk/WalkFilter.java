@@ -0,0 +1,100 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Include and exclude rules of the walk, compiled once
+ * <br>
+ * A rule is a {@code glob:} or {@code regex:} pattern, glob if the syntax is omitted. A pattern
+ * without {@code /} is matched against the file name, any other one against the path relative
+ * to the walked root. Excluded directories are pruned; excluded files and, if there are include
+ * rules, files matching none of them are neither opened nor hashed. Include rules do not apply
+ * to directories, and roots listed in the input are never filtered.
+ */
+public class WalkFilter {
+
+    /**
+     * Filter accepting everything
+     */
+    public static final WalkFilter ALL = new WalkFilter(Collections.emptyList(), Collections.emptyList());
+
+    private final List<Rule> includes;
+    private final List<Rule> excludes;
+
+    private static class Rule {
+      private final PathMatcher matcher;
+      private final boolean relative;
+
+      Rule(final String pattern) {
+        final boolean hasSyntax = pattern.startsWith("glob:") || pattern.startsWith("regex:");
+        this.matcher = FileSystems.getDefault().getPathMatcher(hasSyntax ? pattern : "glob:" + pattern);
+        this.relative = pattern.indexOf('/') >= 0;
+      }
+
+      boolean matches(final Path root, final Path path) {
+        if (relative) {
+          return matcher.matches(root.relativize(path));
+        }
+        final Path name = path.getFileName();
+        return name != null && matcher.matches(name);
+      }
+    }
+
+    private WalkFilter(final List<Rule> includes, final List<Rule> excludes) {
+      this.includes = includes;
+      this.excludes = excludes;
+    }
+
+    private static List<Rule> compile(final List<String> patterns) {
+      final List<Rule> rules = new ArrayList<>();
+      for (String pattern : patterns) {
+        rules.add(new Rule(pattern));
+      }
+      return rules;
+    }
+
+    /**
+     * @param includes patterns of files to hash, all files if empty
+     * @param excludes patterns of files and directories to skip
+     * @return compiled filter
+     * @throws IllegalArgumentException if a pattern is invalid
+     */
+    public static WalkFilter compile(final List<String> includes, final List<String> excludes) {
+      return includes.isEmpty() && excludes.isEmpty() ? ALL : new WalkFilter(compile(includes), compile(excludes));
+    }
+
+    private static boolean matchesAny(final List<Rule> rules, final Path root, final Path path) {
+      for (Rule rule : rules) {
+        if (rule.matches(root, path)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * @param root walked root
+     * @param path file or directory inside the root
+     * @return whether the path matches an exclude rule, for a directory whether its subtree should be pruned
+     */
+    public boolean isExcluded(final Path root, final Path path) {
+      return !excludes.isEmpty() && !path.equals(root) && matchesAny(excludes, root, path);
+    }
+
+    /**
+     * @param root walked root
+     * @param file file inside the root
+     * @return whether the file should be hashed
+     */
+    public boolean acceptsFile(final Path root, final Path file) {
+      if (this == ALL || file.equals(root)) {
+        return true;
+      }
+      return !matchesAny(excludes, root, file) && (includes.isEmpty() || matchesAny(includes, root, file));
+    }
+}
@@ -0,0 +1,243 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latencies of the walk stages, summed over all threads
+ * <br>
+ * Every hook costs a couple of {@link LongAdder} increments, so metrics are always collected.
+ * Files, their sizes and directories are counted by the traversal, so they are available in every
+ * output mode. Directory read times are only measured by {@link ParallelTreeWalker}, which lists
+ * directories itself; {@link java.nio.file.Files#walkFileTree} interleaves listing with visiting.
+ * Hash times cover every read of file contents: full hashes, samples, archive entries,
+ * duplicate fingerprints, dedup chunking and rehashing by the watch daemon.
+ * While a walk runs its metrics are registered with the platform MBean server
+ * as {@code ru.ifmo.rain.bandarchuk.walk:type=WalkMetrics,name=walk-<n>}.
+ */
+public class WalkMetrics implements WalkMetricsMXBean {
+
+    private static final String DOMAIN = "ru.ifmo.rain.bandarchuk.walk";
+    private static final AtomicInteger WALKS = new AtomicInteger();
+
+    private final LongAdder files = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder failedOpens = new LongAdder();
+    private final LongAdder directories = new LongAdder();
+    private final LongAdder directoryReadNanos = new LongAdder();
+    private final LongAdder hashNanos = new LongAdder();
+    private final LongAdder flushNanos = new LongAdder();
+    private final LatencyHistogram hashLatency = new LatencyHistogram();
+    private final LatencyHistogram directoryReadLatency = new LatencyHistogram();
+
+    private volatile long startNanos;
+    private volatile long finishNanos;
+    private ObjectName name;
+
+    void start() {
+      startNanos = System.nanoTime();
+      finishNanos = 0;
+    }
+
+    void finish() {
+      finishNanos = System.nanoTime();
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server, ignoring failures
+     */
+    void register() {
+      try {
+        final ObjectName objectName = new ObjectName(DOMAIN + ":type=WalkMetrics,name=walk-" + WALKS.incrementAndGet());
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        name = objectName;
+      } catch (JMException | SecurityException ignored) {
+      }
+    }
+
+    void unregister() {
+      if (name != null) {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+          server.unregisterMBean(name);
+        } catch (JMException | SecurityException ignored) {
+        }
+        name = null;
+      }
+    }
+
+    void addDirectory() {
+      directories.increment();
+    }
+
+    void addDirectoryRead(final long nanos) {
+      directoryReadNanos.add(nanos);
+      directoryReadLatency.record(nanos);
+    }
+
+    void addHash(final long nanos) {
+      hashNanos.add(nanos);
+      hashLatency.record(nanos);
+    }
+
+    /**
+     * @param attrs attributes of a file found by the traversal
+     */
+    void addFile(final BasicFileAttributes attrs) {
+      files.increment();
+      if (attrs.isRegularFile()) {
+        bytes.add(attrs.size());
+      }
+    }
+
+    void addFailedOpen() {
+      failedOpens.increment();
+    }
+
+    void addFlush(final long nanos) {
+      flushNanos.add(nanos);
+    }
+
+    /**
+     * Reading and hashing of file contents measured by {@link #timeHash(HashStep)}
+     *
+     * @param <T> result of the step
+     * @param <E> exception thrown by the step
+     */
+    @FunctionalInterface
+    interface HashStep<T, E extends Exception> {
+      T run() throws E;
+    }
+
+    /**
+     * @param step step to measure
+     * @return result of the step
+     * @throws E if the step fails, its time is added all the same
+     */
+    <T, E extends Exception> T timeHash(final HashStep<T, E> step) throws E {
+      final long start = System.nanoTime();
+      try {
+        return step.run();
+      } finally {
+        addHash(System.nanoTime() - start);
+      }
+    }
+
+    /**
+     * @param fileHasher hasher to measure
+     * @return hasher adding the time of every call to the hash time
+     */
+    FileHasher timed(final FileHasher fileHasher) {
+      return (file, attrs) -> timeHash(() -> fileHasher.hash(file, attrs));
+    }
+
+    @Override
+    public long getFiles() {
+      return files.sum();
+    }
+
+    @Override
+    public long getBytes() {
+      return bytes.sum();
+    }
+
+    @Override
+    public long getFailedOpens() {
+      return failedOpens.sum();
+    }
+
+    @Override
+    public long getDirectories() {
+      return directories.sum();
+    }
+
+    private long getElapsedNanos() {
+      if (startNanos == 0) {
+        return 0;
+      }
+      return (finishNanos == 0 ? System.nanoTime() : finishNanos) - startNanos;
+    }
+
+    private double perSecond(final long count) {
+      final long elapsed = getElapsedNanos();
+      return elapsed == 0 ? 0 : count * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    @Override
+    public double getFilesPerSecond() {
+      return perSecond(getFiles());
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+      return perSecond(getBytes());
+    }
+
+    @Override
+    public long getElapsedMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(getElapsedNanos());
+    }
+
+    @Override
+    public long getDirectoryReadMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(directoryReadNanos.sum());
+    }
+
+    @Override
+    public long getHashMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(hashNanos.sum());
+    }
+
+    @Override
+    public long getFlushMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(flushNanos.sum());
+    }
+
+    @Override
+    public long getHashLatencyMedianMicros() {
+      return TimeUnit.NANOSECONDS.toMicros(hashLatency.getQuantile(0.5));
+    }
+
+    @Override
+    public long getHashLatency99Micros() {
+      return TimeUnit.NANOSECONDS.toMicros(hashLatency.getQuantile(0.99));
+    }
+
+    @Override
+    public long getDirectoryReadLatencyMedianMicros() {
+      return TimeUnit.NANOSECONDS.toMicros(directoryReadLatency.getQuantile(0.5));
+    }
+
+    @Override
+    public long getDirectoryReadLatency99Micros() {
+      return TimeUnit.NANOSECONDS.toMicros(directoryReadLatency.getQuantile(0.99));
+    }
+
+    @Override
+    public long[] getHashLatencyHistogram() {
+      return hashLatency.getCounts();
+    }
+
+    @Override
+    public long[] getDirectoryReadLatencyHistogram() {
+      return directoryReadLatency.getCounts();
+    }
+
+    @Override
+    public String toString() {
+      return String.format(Locale.ROOT, "Files: %d (%.1f/s), bytes: %d (%.1f MiB/s), failed opens: %d, "
+          + "elapsed: %d ms, directory read time: %d ms (p50 %d us, p99 %d us), hash time: %d ms (p50 %d us, p99 %d us), "
+          + "flush time: %d ms",
+        getFiles(), getFilesPerSecond(), getBytes(), getBytesPerSecond() / (1 << 20), getFailedOpens(),
+        getElapsedMillis(), getDirectoryReadMillis(), getDirectoryReadLatencyMedianMicros(),
+        getDirectoryReadLatency99Micros(), getHashMillis(), getHashLatencyMedianMicros(), getHashLatency99Micros(),
+        getFlushMillis());
+    }
+}
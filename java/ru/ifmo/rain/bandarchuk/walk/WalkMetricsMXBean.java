@@ -0,0 +1,42 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+/**
+ * Management interface of {@link WalkMetrics}
+ * <br>
+ * Latency histograms are indexed as in {@link LatencyHistogram}: element {@code i > 0} counts
+ * latencies in {@code [2^(i-1), 2^i)} nanoseconds.
+ */
+public interface WalkMetricsMXBean {
+
+    long getFiles();
+
+    long getBytes();
+
+    long getFailedOpens();
+
+    long getDirectories();
+
+    double getFilesPerSecond();
+
+    double getBytesPerSecond();
+
+    long getElapsedMillis();
+
+    long getHashMillis();
+
+    long getDirectoryReadMillis();
+
+    long getFlushMillis();
+
+    long getHashLatencyMedianMicros();
+
+    long getHashLatency99Micros();
+
+    long getDirectoryReadLatencyMedianMicros();
+
+    long getDirectoryReadLatency99Micros();
+
+    long[] getHashLatencyHistogram();
+
+    long[] getDirectoryReadLatencyHistogram();
+}
@@ -0,0 +1,491 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Three-stage walk pipeline: the caller submits paths in output order, workers hash them
+ * in parallel and a single writer thread prints results in the order of submission.
+ * <br>
+ * At most {@code capacity} results are in flight, so a slow writer blocks the caller
+ * instead of letting the queue grow without bound.
+ */
+public class WalkPipeline implements WalkConsumer {
+
+    static final int QUEUE_CAPACITY_PER_THREAD = 256;
+
+    private final HashFunction hashFunction;
+    private final FileHasher fileHasher;
+    private final ExecutorService hashers;
+    private final BlockingQueue<WalkEntry> pending;
+    private final ResultWriter resultWriter;
+    private final Thread writer;
+
+    /**
+     * Marker of the end of the queue, positioned like any other entry, so every pipeline has its own
+     */
+    private final WalkEntry end = WalkEntry.completed(null, null);
+
+    private volatile Exception writeError = null;
+
+    private boolean directoryDigests = false;
+    private final Deque<List<Child>> directories = new ArrayDeque<>();
+
+    private InodeBatch inodeBatch = null;
+    private StoreExecutors storeExecutors = null;
+    private int archiveDepth = 0;
+    private SampledFingerprint sampling = null;
+
+    /**
+     * Metrics of the walk, discarded unless {@link #setMetrics(WalkMetrics) set}
+     */
+    private WalkMetrics metrics = new WalkMetrics();
+
+    private Path journal = null;
+    private long checkpointIntervalNanos;
+    private long line = 0;
+    private long ordinal = 0;
+    private long skipped = 0;
+
+    private static class Child {
+      private final String name;
+      private final boolean directory;
+      private final Future<byte[]> hash;
+
+      Child(final String name, final boolean directory, final Future<byte[]> hash) {
+        this.name = name;
+        this.directory = directory;
+        this.hash = hash;
+      }
+    }
+
+    public WalkPipeline(final int threads, final HashFunction hashFunction, final ResultWriter resultWriter) {
+      this(threads, hashFunction, (file, attrs) -> hashFunction.hash(file), resultWriter);
+    }
+
+    public WalkPipeline(final int threads, final HashFunction hashFunction, final FileHasher fileHasher,
+                        final ResultWriter resultWriter) {
+      this(HashExecutors.fixed(threads), threads * QUEUE_CAPACITY_PER_THREAD, hashFunction, fileHasher, resultWriter);
+    }
+
+    /**
+     * @param hashers      executor to run hash tasks, shut down when the pipeline is closed
+     * @param capacity     maximal number of results in flight
+     * @param hashFunction function producing the digest of files that failed to be visited
+     * @param fileHasher   hasher of visited files
+     * @param resultWriter destination of results
+     */
+    public WalkPipeline(final ExecutorService hashers, final int capacity, final HashFunction hashFunction,
+                        final FileHasher fileHasher, final ResultWriter resultWriter) {
+      if (capacity <= 0) {
+        throw new IllegalArgumentException("Invalid argument: capacity = " + capacity + ", should be positive");
+      }
+      this.hashFunction = hashFunction;
+      this.fileHasher = fileHasher;
+      this.hashers = hashers;
+      this.pending = new ArrayBlockingQueue<>(capacity);
+      this.resultWriter = resultWriter;
+      this.writer = new Thread(this::write, "walk-writer");
+      this.writer.start();
+    }
+
+    /**
+     * Writes a digest of every walked directory after its contents, as {@code <hash> <directory path>/}
+     * <br>
+     * The digest is computed from names and hashes of the directory children sorted by name,
+     * so equal subtrees have equal digests regardless of their location and listing order.
+     *
+     * @return this pipeline
+     */
+    public WalkPipeline withDirectoryDigests() {
+      this.directoryDigests = true;
+      return this;
+    }
+
+    /**
+     * Starts hash tasks in batches sorted by inode numbers of their files instead of in traversal order,
+     * cutting seeks on rotational storage. Results are still written in traversal order.
+     *
+     * @param batchSize number of hash tasks collected before they are sorted and started
+     * @return this pipeline
+     * @see InodeBatch
+     */
+    public WalkPipeline withInodeOrder(final int batchSize) {
+      this.inodeBatch = new InodeBatch(batchSize);
+      return this;
+    }
+
+    /**
+     * Hashes files of stores with configured limits on executors of their stores
+     * instead of the executor of the pipeline
+     *
+     * @param storeExecutors executors of stores, shut down when the pipeline is closed
+     * @return this pipeline
+     */
+    public WalkPipeline withStoreExecutors(final StoreExecutors storeExecutors) {
+      this.storeExecutors = storeExecutors;
+      return this;
+    }
+
+    /**
+     * Writes hashes of entries of zip and jar archives after the archives themselves,
+     * as {@code <hash> <archive>!/<entry>}
+     * <br>
+     * Archives are opened through the zip file system and their entries are hashed as streams,
+     * nothing is extracted to disk. Entries of nested archives are read by a single task per archive.
+     *
+     * @param depth number of nesting levels to expand, {@code 1} for archives found by the walk only
+     * @return this pipeline
+     * @see Archives
+     */
+    public WalkPipeline withArchives(final int depth) {
+      if (depth <= 0) {
+        throw new IllegalArgumentException("Archive depth should be positive: " + depth);
+      }
+      this.archiveDepth = depth;
+      return this;
+    }
+
+    /**
+     * @param metrics metrics to add the time of hashing archive entries to, files are measured by their hasher
+     */
+    void setMetrics(final WalkMetrics metrics) {
+      this.metrics = metrics;
+    }
+
+    /**
+     * Fingerprints large files from samples of their contents instead of hashing them in full
+     *
+     * @param sampling fingerprint of large files
+     * @return this pipeline
+     * @see SampledFingerprint
+     */
+    WalkPipeline withSampling(final SampledFingerprint sampling) {
+      this.sampling = sampling;
+      return this;
+    }
+
+    /**
+     * Periodically forces written results to disk and records the position of the last one in a journal
+     * <br>
+     * A checkpoint is also taken after the last result. Must be called before anything is submitted.
+     *
+     * @param journal        location of the journal
+     * @param intervalMillis minimal time between checkpoints
+     * @return this pipeline
+     * @see WalkCheckpoint
+     */
+    public WalkPipeline withCheckpoints(final Path journal, final long intervalMillis) {
+      this.journal = journal;
+      this.checkpointIntervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+      return this;
+    }
+
+    /**
+     * Marks the following submissions as found from the input line
+     *
+     * @param line index of the input line, starting from {@code 0}
+     */
+    public void startLine(final long line) {
+      this.line = line;
+      this.ordinal = 0;
+    }
+
+    /**
+     * Drops the following submissions of the current line without hashing them
+     *
+     * @param entries number of submissions to drop, already written by a previous walk
+     */
+    public void skip(final long entries) {
+      this.skipped = entries;
+    }
+
+    private boolean skipped() {
+      if (skipped == 0) {
+        return false;
+      }
+      skipped--;
+      ordinal++;
+      return true;
+    }
+
+    @Override
+    public void enterDirectory(final Path dir, final BasicFileAttributes attrs) {
+      if (directoryDigests) {
+        directories.push(new ArrayList<>());
+      }
+    }
+
+    @Override
+    public void exitDirectory(final Path dir) throws InterruptedIOException {
+      if (!directoryDigests || directories.isEmpty()) {
+        return;
+      }
+      final List<Child> children = directories.pop();
+      if (skipped()) {
+        return;
+      }
+      final WalkEntry entry = WalkEntry.deferred(dir.toString() + dir.getFileSystem().getSeparator(),
+        () -> digest(children));
+      addChild(dir, true, entry);
+      put(entry);
+    }
+
+    private byte[] digest(final List<Child> children) throws InterruptedException, ExecutionException {
+      children.sort(Comparator.comparing(child -> child.name));
+      final Hasher hasher = hashFunction.newHasher();
+      for (Child child : children) {
+        hasher.update(ByteBuffer.wrap(child.name.getBytes(StandardCharsets.UTF_8)));
+        hasher.update(ByteBuffer.wrap(new byte[]{0, (byte) (child.directory ? 'd' : 'f')}));
+        hasher.update(ByteBuffer.wrap(child.hash.get()));
+      }
+      return hasher.digest();
+    }
+
+    private void addChild(final Path file, final boolean directory, final WalkEntry entry) {
+      final Path name = file.getFileName();
+      if (!directories.isEmpty() && name != null) {
+        directories.peek().add(new Child(name.toString(), directory, entry.getFuture()));
+      }
+    }
+
+    @Override
+    public void submit(final Path file, final BasicFileAttributes attrs) throws IOException {
+      final ExecutorService storeExecutor = storeExecutors == null ? null : storeExecutors.forFile(file);
+      final ExecutorService executor = storeExecutor == null ? hashers : storeExecutor;
+      if (sampling != null && sampling.isSampled(attrs)) {
+        if (!skipped()) {
+          final FutureTask<List<WalkEntry>> group = new FutureTask<>(() -> sampling.fingerprint(file, attrs));
+          put(WalkEntry.group(group));
+          execute(group, inodeBatch == null ? null : attrs, executor);
+        }
+      } else if (!skipped()) {
+        final FutureTask<byte[]> task = new FutureTask<>(() -> fileHasher.hash(file, attrs));
+        final WalkEntry entry = new WalkEntry(file.toString(), task);
+        addChild(file, false, entry);
+        put(entry);
+        execute(task, inodeBatch == null ? null : attrs, executor);
+      }
+      if (archiveDepth > 0 && attrs != null && attrs.isRegularFile() && Archives.isArchive(file.toString())) {
+        submitArchive(file, executor);
+      }
+    }
+
+    /**
+     * Starts the task, through the inode batch if attributes of the hashed file are given
+     */
+    private void execute(final FutureTask<?> task, final BasicFileAttributes attrs, final ExecutorService executor)
+      throws InterruptedIOException {
+      try {
+        if (attrs != null) {
+          inodeBatch.add(attrs, task, executor);
+        } else {
+          executor.execute(task);
+        }
+      } catch (RejectedExecutionException e) {
+        task.cancel(false);
+        throw new InterruptedIOException("Hash task rejected: " + e.getMessage());
+      }
+    }
+
+    /**
+     * Submits entries of the archive in the order of its file system, which is closed once they are written
+     */
+    private void submitArchive(final Path archive, final ExecutorService executor) throws IOException {
+      final FileSystem fileSystem = Archives.open(archive);
+      if (fileSystem == null) {
+        return;
+      }
+      final String name = archive.toString();
+      try {
+        for (Path root : fileSystem.getRootDirectories()) {
+          Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(final Path entry, final BasicFileAttributes attrs) throws IOException {
+              submitArchiveEntry(entry, Archives.entryName(name, entry.toString()), executor);
+              return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(final Path entry, final IOException exc) throws IOException {
+              if (!skipped()) {
+                put(WalkEntry.completed(Archives.entryName(name, entry.toString()), hashFunction.getEmptyHash()));
+              }
+              return FileVisitResult.CONTINUE;
+            }
+          });
+        }
+      } finally {
+        enqueue(WalkEntry.release(fileSystem));
+      }
+    }
+
+    private void submitArchiveEntry(final Path entry, final String name, final ExecutorService executor)
+      throws InterruptedIOException {
+      if (!skipped()) {
+        final FutureTask<byte[]> task = new FutureTask<>(() -> metrics.timeHash(() -> Archives.hash(entry, hashFunction)));
+        put(new WalkEntry(name, task));
+        execute(task, null, executor);
+      }
+      if (archiveDepth > 1 && Archives.isArchive(name) && !skipped()) {
+        final FutureTask<List<WalkEntry>> group = new FutureTask<>(
+          () -> metrics.timeHash(() -> Archives.readNested(entry, name, archiveDepth - 2, hashFunction)));
+        put(WalkEntry.group(group));
+        execute(group, null, executor);
+      }
+    }
+
+    /**
+     * Starts hash tasks held in the inode batch, so that the writer can make progress
+     */
+    private void flushInodeBatch() throws InterruptedIOException {
+      if (inodeBatch != null) {
+        try {
+          inodeBatch.flush();
+        } catch (RejectedExecutionException e) {
+          throw new InterruptedIOException("Hash task rejected: " + e.getMessage());
+        }
+      }
+    }
+
+    @Override
+    public void submitFailed(final String path) throws InterruptedIOException {
+      if (skipped()) {
+        return;
+      }
+      final WalkEntry entry = WalkEntry.completed(path, hashFunction.getEmptyHash());
+      if (!directories.isEmpty()) {
+        try {
+          addChild(Paths.get(path), false, entry);
+        } catch (InvalidPathException ignored) {
+        }
+      }
+      put(entry);
+    }
+
+    private void put(final WalkEntry entry) throws InterruptedIOException {
+      entry.setPosition(line, ordinal++);
+      enqueue(entry);
+    }
+
+    private void enqueue(final WalkEntry entry) throws InterruptedIOException {
+      try {
+        if (inodeBatch == null || !pending.offer(entry)) {
+          flushInodeBatch();
+          pending.put(entry);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for the writer");
+      }
+    }
+
+    private void write() {
+      WalkEntry last = null;
+      long lastCheckpoint = System.nanoTime();
+      try {
+        WalkEntry entry;
+        while ((entry = pending.take()) != end) {
+          if (entry.getResource() != null) {
+            close(entry.getResource());
+            continue;
+          }
+          if (writeError != null) {
+            continue;
+          }
+          try {
+            final List<WalkEntry> group = entry.getGroup();
+            if (group == null) {
+              write(entry);
+            } else {
+              for (WalkEntry member : group) {
+                write(member);
+              }
+            }
+            last = entry;
+            if (journal != null && System.nanoTime() - lastCheckpoint >= checkpointIntervalNanos) {
+              checkpoint(last);
+              lastCheckpoint = System.nanoTime();
+            }
+          } catch (ExecutionException | IOException | RuntimeException e) {
+            writeError = e;
+          }
+        }
+        if (journal != null && last != null && writeError == null) {
+          checkpoint(last);
+        }
+      } catch (InterruptedException | IOException e) {
+        writeError = e;
+      }
+    }
+
+    private void write(final WalkEntry entry) throws InterruptedException, ExecutionException, IOException {
+      if (entry.getMarker() == 0) {
+        resultWriter.write(entry.getHash(), entry.getPath());
+      } else {
+        resultWriter.write(entry.getMarker(), entry.getHash(), entry.getPath());
+      }
+    }
+
+    private static void close(final Closeable resource) {
+      try {
+        resource.close();
+      } catch (IOException ignored) {
+      }
+    }
+
+    private void checkpoint(final WalkEntry last) throws IOException {
+      resultWriter.force();
+      new WalkCheckpoint(last.getLine(), last.getOrdinal() + 1, resultWriter.position()).write(journal);
+    }
+
+    /**
+     * Waits until every submitted result is written and stops the workers
+     *
+     * @throws IOException if some result could not be computed or the wait was interrupted
+     */
+    @Override
+    public void close() throws IOException {
+      try {
+        flushInodeBatch();
+        put(end);
+        writer.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        writer.interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for the writer");
+      } finally {
+        hashers.shutdownNow();
+        if (storeExecutors != null) {
+          storeExecutors.shutdownNow();
+        }
+      }
+      if (writeError != null) {
+        throw new IOException("Error while writing walk results", writeError);
+      }
+    }
+}
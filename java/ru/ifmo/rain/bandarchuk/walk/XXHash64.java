@@ -0,0 +1,123 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * xxHash64 with zero seed
+ */
+public class XXHash64 implements HashFunction {
+
+    private static final long PRIME1 = 0x9e3779b185ebca87L;
+    private static final long PRIME2 = 0xc2b2ae3d27d4eb4fL;
+    private static final long PRIME3 = 0x165667b19e3779f9L;
+    private static final long PRIME4 = 0x85ebca77c2b2ae63L;
+    private static final long PRIME5 = 0x27d4eb2f165667c5L;
+
+    private static final int STRIPE = 32;
+
+    @Override
+    public String getName() {
+      return "xxhash64";
+    }
+
+    @Override
+    public int getLength() {
+      return Long.BYTES;
+    }
+
+    @Override
+    public Hasher newHasher() {
+      return new XXHasher();
+    }
+
+    private static long round(final long acc, final long input) {
+      return Long.rotateLeft(acc + input * PRIME2, 31) * PRIME1;
+    }
+
+    private static long merge(final long acc, final long value) {
+      return (acc ^ round(0, value)) * PRIME1 + PRIME4;
+    }
+
+    private static class XXHasher implements Hasher {
+      private final ByteBuffer stripe = ByteBuffer.allocate(STRIPE).order(ByteOrder.LITTLE_ENDIAN);
+
+      private long v1 = PRIME1 + PRIME2;
+      private long v2 = PRIME2;
+      private long v3 = 0;
+      private long v4 = -PRIME1;
+      private long total = 0;
+
+      @Override
+      public void update(final ByteBuffer bytes) {
+        final ByteBuffer input = bytes.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        total += input.remaining();
+        if (stripe.position() > 0) {
+          while (stripe.hasRemaining() && input.hasRemaining()) {
+            stripe.put(input.get());
+          }
+          if (stripe.hasRemaining()) {
+            bytes.position(bytes.limit());
+            return;
+          }
+          stripe.flip();
+          consume(stripe, 0);
+          stripe.clear();
+        }
+        int position = input.position();
+        final int limit = input.limit();
+        for (; position + STRIPE <= limit; position += STRIPE) {
+          consume(input, position);
+        }
+        while (position < limit) {
+          stripe.put(input.get(position++));
+        }
+        bytes.position(bytes.limit());
+      }
+
+      private void consume(final ByteBuffer input, final int position) {
+        v1 = round(v1, input.getLong(position));
+        v2 = round(v2, input.getLong(position + 8));
+        v3 = round(v3, input.getLong(position + 16));
+        v4 = round(v4, input.getLong(position + 24));
+      }
+
+      @Override
+      public byte[] digest() {
+        long hash;
+        if (total >= STRIPE) {
+          hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+          hash = merge(hash, v1);
+          hash = merge(hash, v2);
+          hash = merge(hash, v3);
+          hash = merge(hash, v4);
+        } else {
+          hash = PRIME5;
+        }
+        hash += total;
+
+        final int limit = stripe.position();
+        int position = 0;
+        for (; position + Long.BYTES <= limit; position += Long.BYTES) {
+          hash ^= round(0, stripe.getLong(position));
+          hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+        }
+        if (position + Integer.BYTES <= limit) {
+          hash ^= Integer.toUnsignedLong(stripe.getInt(position)) * PRIME1;
+          hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+          position += Integer.BYTES;
+        }
+        for (; position < limit; position++) {
+          hash ^= Byte.toUnsignedLong(stripe.get(position)) * PRIME5;
+          hash = Long.rotateLeft(hash, 11) * PRIME1;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= PRIME2;
+        hash ^= hash >>> 29;
+        hash *= PRIME3;
+        hash ^= hash >>> 32;
+        return ByteBuffer.allocate(Long.BYTES).putLong(hash).array();
+      }
+    }
+}
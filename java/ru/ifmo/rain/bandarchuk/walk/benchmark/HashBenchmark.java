@@ -0,0 +1,71 @@
+package ru.ifmo.rain.bandarchuk.walk.benchmark;
+
+import ru.ifmo.rain.bandarchuk.walk.HashFunction;
+import ru.ifmo.rain.bandarchuk.walk.HashFunctions;
+import ru.ifmo.rain.bandarchuk.walk.Hasher;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Random;
+
+/**
+ * Measures in-memory throughput of every registered hash algorithm
+ * <br>
+ * Usage: {@code HashBenchmark [algorithm...]}
+ */
+public class HashBenchmark {
+
+    private static final int DATA_SIZE = 64 * 1024 * 1024;
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURED_ITERATIONS = 5;
+
+    private static long run(final HashFunction function, final ByteBuffer data) {
+      final long start = System.nanoTime();
+      final Hasher hasher = function.newHasher();
+      hasher.update(data.duplicate());
+      if (hasher.digest().length != function.getLength()) {
+        throw new AssertionError("Unexpected digest length of " + function.getName());
+      }
+      return System.nanoTime() - start;
+    }
+
+    private static double measure(final HashFunction function, final ByteBuffer data) {
+      for (int iteration = 0; iteration < WARMUP_ITERATIONS; iteration++) {
+        run(function, data);
+      }
+      long best = Long.MAX_VALUE;
+      for (int iteration = 0; iteration < MEASURED_ITERATIONS; iteration++) {
+        best = Math.min(best, run(function, data));
+      }
+      return data.remaining() / (1024.0 * 1024.0) / (best / 1e9);
+    }
+
+    public static void main(String[] args) {
+      final Collection<HashFunction> functions;
+      if (args.length == 0) {
+        functions = HashFunctions.getAll();
+      } else {
+        functions = new ArrayList<>();
+        try {
+          for (String algorithm : args) {
+            functions.add(HashFunctions.forName(algorithm));
+          }
+        } catch (IllegalArgumentException e) {
+          System.out.println(e.getMessage());
+          return;
+        }
+      }
+
+      final byte[] bytes = new byte[DATA_SIZE];
+      new Random(DATA_SIZE).nextBytes(bytes);
+      final ByteBuffer heap = ByteBuffer.wrap(bytes);
+      final ByteBuffer direct = ByteBuffer.allocateDirect(DATA_SIZE);
+      direct.put(bytes).flip();
+
+      System.out.printf("%-10s %12s %12s%n", "algorithm", "heap MiB/s", "direct MiB/s");
+      for (HashFunction function : functions) {
+        System.out.printf("%-10s %12.1f %12.1f%n", function.getName(), measure(function, heap), measure(function, direct));
+      }
+    }
+}
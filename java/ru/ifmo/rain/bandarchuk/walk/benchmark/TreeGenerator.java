@@ -0,0 +1,161 @@
+package ru.ifmo.rain.bandarchuk.walk.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Generates synthetic file trees for {@link WalkBenchmark}
+ * <br>
+ * Usage: {@code TreeGenerator <root> <tiny|huge|deep|names|all> [scale]}
+ * <br>
+ * Every profile is generated into its own subdirectory of the root from a seed of the profile name
+ * and the scale, so trees of the same scale are equal whether generated alone or with {@code all}. Names are generated as Unicode strings and encoded
+ * by the platform; names that are not valid UTF-8 can only be created outside of Java
+ * and are added by {@code walk_bench.sh}.
+ */
+public class TreeGenerator {
+
+    private static final String USAGE = "Usage: TreeGenerator <root> <tiny|huge|deep|names|all> [scale]";
+
+    private static final int TINY_FILES = 20_000;
+    private static final int TINY_DIRECTORIES = 200;
+    private static final int TINY_MAX_SIZE = 512;
+    private static final int HUGE_FILES = 4;
+    private static final long HUGE_SIZE = 128L * 1024 * 1024;
+    private static final int DEEP_DEPTH = 256;
+    private static final int DEEP_BRANCHES = 8;
+    private static final int NAMES_FILES = 2_000;
+
+    /**
+     * Code point ranges of names: Latin, Cyrillic, Greek, CJK, Hangul, emoji and Latin-1 letters
+     */
+    private static final int[][] ALPHABETS = {
+      {'a', 'z'}, {0x0430, 0x044f}, {0x03b1, 0x03c9}, {0x4e00, 0x4fff}, {0xac00, 0xacff}, {0x1f600, 0x1f64f},
+      {0x00c0, 0x00ff},
+    };
+
+    private final Random random;
+    private final byte[] block = new byte[1024 * 1024];
+
+    private TreeGenerator(final long seed) {
+      this.random = new Random(seed);
+      random.nextBytes(block);
+    }
+
+    private void writeFile(final Path file, final long size) throws IOException {
+      try (OutputStream out = Files.newOutputStream(file)) {
+        for (long written = 0; written < size; written += block.length) {
+          // shuffle a little so that blocks of different files differ
+          block[random.nextInt(block.length)] ^= (byte) random.nextInt(256);
+          out.write(block, 0, (int) Math.min(block.length, size - written));
+        }
+      }
+    }
+
+    private void tiny(final Path root, final int scale) throws IOException {
+      for (int file = 0; file < TINY_FILES * scale; file++) {
+        final Path dir = root.resolve("d" + file % (TINY_DIRECTORIES * scale));
+        Files.createDirectories(dir);
+        writeFile(dir.resolve("f" + file), random.nextInt(TINY_MAX_SIZE + 1));
+      }
+    }
+
+    private void huge(final Path root, final int scale) throws IOException {
+      Files.createDirectories(root);
+      for (int file = 0; file < HUGE_FILES; file++) {
+        writeFile(root.resolve("huge" + file + ".bin"), HUGE_SIZE * scale);
+      }
+    }
+
+    private void deep(final Path root, final int scale) throws IOException {
+      for (int branch = 0; branch < DEEP_BRANCHES * scale; branch++) {
+        Path dir = root.resolve("b" + branch);
+        for (int depth = 0; depth < DEEP_DEPTH; depth++) {
+          Files.createDirectories(dir);
+          writeFile(dir.resolve("f"), random.nextInt(TINY_MAX_SIZE + 1));
+          dir = dir.resolve("d");
+        }
+      }
+    }
+
+    private String randomName() {
+      final int[] alphabet = ALPHABETS[random.nextInt(ALPHABETS.length)];
+      final int length = 1 + random.nextInt(24);
+      final StringBuilder name = new StringBuilder();
+      for (int i = 0; i < length; i++) {
+        name.appendCodePoint(alphabet[0] + random.nextInt(alphabet[1] - alphabet[0] + 1));
+      }
+      return name.toString();
+    }
+
+    private void names(final Path root, final int scale) throws IOException {
+      Files.createDirectories(root);
+      int skipped = 0;
+      for (int file = 0; file < NAMES_FILES * scale; file++) {
+        try {
+          final Path dir = root.resolve(randomName());
+          Files.createDirectories(dir);
+          writeFile(dir.resolve(randomName() + file), random.nextInt(TINY_MAX_SIZE + 1));
+        } catch (InvalidPathException e) {
+          // the platform encoding cannot represent the name
+          skipped++;
+        }
+      }
+      if (skipped > 0) {
+        System.err.println("Skipped " + skipped + " names not representable in the platform encoding");
+      }
+    }
+
+    private static long seed(final String profile, final int scale) {
+      return (long) profile.hashCode() << 32 | scale;
+    }
+
+    private static void generate(final Path root, final String profile, final int scale) throws IOException {
+      if ("all".equals(profile)) {
+        for (String each : new String[]{"tiny", "huge", "deep", "names"}) {
+          generate(root, each, scale);
+        }
+        return;
+      }
+      final TreeGenerator generator = new TreeGenerator(seed(profile, scale));
+      switch (profile) {
+        case "tiny":
+          generator.tiny(root.resolve(profile), scale);
+          break;
+        case "huge":
+          generator.huge(root.resolve(profile), scale);
+          break;
+        case "deep":
+          generator.deep(root.resolve(profile), scale);
+          break;
+        case "names":
+          generator.names(root.resolve(profile), scale);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown profile: " + profile);
+      }
+    }
+
+    public static void main(String[] args) {
+      if (args == null || args.length < 2 || args.length > 3) {
+        System.out.println(USAGE);
+        return;
+      }
+      try {
+        final int scale = args.length == 3 ? Integer.parseInt(args[2]) : 1;
+        if (scale <= 0) {
+          throw new IllegalArgumentException("Scale should be positive: " + scale);
+        }
+        generate(Paths.get(args[0]), args[1], scale);
+      } catch (IllegalArgumentException e) {
+        System.out.println(e.getMessage());
+      } catch (IOException e) {
+        System.out.println("Error while generating the tree: " + e.getMessage());
+      }
+    }
+}
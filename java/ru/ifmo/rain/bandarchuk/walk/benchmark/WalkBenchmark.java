@@ -0,0 +1,191 @@
+package ru.ifmo.rain.bandarchuk.walk.benchmark;
+
+import ru.ifmo.rain.bandarchuk.walk.FileVisitor;
+import ru.ifmo.rain.bandarchuk.walk.HashFunction;
+import ru.ifmo.rain.bandarchuk.walk.HashFunctions;
+import ru.ifmo.rain.bandarchuk.walk.RecursiveWalk;
+import ru.ifmo.rain.bandarchuk.walk.WalkArguments;
+import ru.ifmo.rain.bandarchuk.walk.WalkConsumer;
+import ru.ifmo.rain.bandarchuk.walk.WalkFilter;
+import ru.ifmo.rain.bandarchuk.walk.WalkMetrics;
+import ru.ifmo.rain.bandarchuk.walk.exceptions.RecursiveWalkException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Measures the walk on a tree generated by {@link TreeGenerator}
+ * <br>
+ * Usage: {@code WalkBenchmark <tree> [--mode=hash|visit|walk] [--cold] [--iterations=<n>] [--warmup=<n>]
+ * [--threads=<count>] [--hash=<algorithm>] [--fork-join]}
+ * <br>
+ * {@code hash} hashes every file of the tree on the calling thread with {@link HashFunction#digest(Path)},
+ * {@code visit} traverses the tree with {@link FileVisitor} without reading files and
+ * {@code walk} runs {@link RecursiveWalk#walk()} end to end into a temporary output.
+ * Hot runs repeat on the page cache filled by the warmup; cold runs drop the page cache
+ * before every measured iteration, which needs write access to {@code /proc/sys/vm/drop_caches}.
+ */
+public class WalkBenchmark {
+
+    private static final String USAGE = "Usage: WalkBenchmark <tree> [--mode=hash|visit|walk] [--cold]"
+      + " [--iterations=<n>] [--warmup=<n>] [--threads=<count>] [--hash=<algorithm>] [--fork-join]";
+
+    private static final Path DROP_CACHES = Paths.get("/proc/sys/vm/drop_caches");
+
+    private static final int DEFAULT_ITERATIONS = 5;
+    private static final int DEFAULT_WARMUP = 2;
+
+    private interface Run {
+      /**
+       * @return number of visited files
+       */
+      long run() throws IOException, RecursiveWalkException;
+    }
+
+    private static long hash(final Path tree, final HashFunction function) throws IOException {
+      final long[] files = {0};
+      Files.walkFileTree(tree, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+          if (function.digest(file).length != function.getLength()) {
+            throw new AssertionError("Unexpected digest length of " + function.getName());
+          }
+          files[0]++;
+          return FileVisitResult.CONTINUE;
+        }
+      });
+      return files[0];
+    }
+
+    private static long visit(final Path tree) throws IOException {
+      final long[] files = {0};
+      final WalkConsumer counter = new WalkConsumer() {
+        @Override
+        public void submit(final Path file, final BasicFileAttributes attrs) {
+          files[0]++;
+        }
+
+        @Override
+        public void submitFailed(final String path) {
+          files[0]++;
+        }
+
+        @Override
+        public void close() {
+        }
+      };
+      Files.walkFileTree(tree, new FileVisitor(counter, new WalkMetrics(), WalkFilter.ALL));
+      return files[0];
+    }
+
+    private static long walk(final WalkArguments arguments, final Path input, final Path output)
+      throws RecursiveWalkException {
+      final RecursiveWalk walk = new RecursiveWalk(input.toString(), output.toString())
+        .setThreads(arguments.getPositiveInt("threads", Runtime.getRuntime().availableProcessors()))
+        .setHashFunction(arguments.getOption("hash", HashFunctions::forName, HashFunctions.DEFAULT))
+        .setParallelTraversal(arguments.hasFlag("fork-join"));
+      walk.walk();
+      return walk.getMetrics().getFiles();
+    }
+
+    private static void dropCaches() throws IOException {
+      try {
+        if (new ProcessBuilder("sync").inheritIO().start().waitFor() != 0) {
+          throw new IOException("sync failed");
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while syncing", e);
+      }
+      Files.write(DROP_CACHES, "3".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static double millis(final long nanos) {
+      return nanos / 1e6;
+    }
+
+    private static void measure(final Run run, final boolean cold, final int warmup, final int iterations)
+      throws IOException, RecursiveWalkException {
+      for (int iteration = 0; iteration < warmup; iteration++) {
+        run.run();
+      }
+      final List<Long> times = new ArrayList<>();
+      long files = 0;
+      for (int iteration = 0; iteration < iterations; iteration++) {
+        if (cold) {
+          dropCaches();
+        }
+        final long start = System.nanoTime();
+        files = run.run();
+        final long time = System.nanoTime() - start;
+        times.add(time);
+        System.out.printf("iteration %d: %.1f ms%n", iteration + 1, millis(time));
+      }
+      Collections.sort(times);
+      final long best = times.get(0);
+      final long median = times.get(times.size() / 2);
+      System.out.printf("%s: %d files, best %.1f ms, median %.1f ms, %.1f files/s%n",
+        cold ? "cold" : "hot", files, millis(best), millis(median), files / (median / 1e9));
+    }
+
+    public static void main(String[] args) {
+      try {
+        if (args == null || Arrays.stream(args).anyMatch(Objects::isNull)) {
+          throw new RecursiveWalkException(USAGE);
+        }
+        final WalkArguments arguments = new WalkArguments(args);
+        if (arguments.getPositional().size() != 1) {
+          throw new RecursiveWalkException(USAGE);
+        }
+        final Path tree = Paths.get(arguments.getPositional().get(0));
+        if (!Files.isDirectory(tree)) {
+          throw new RecursiveWalkException("Tree is not a directory: '" + tree + "'");
+        }
+        final String mode = arguments.getOption("mode", "walk");
+        final boolean cold = arguments.hasFlag("cold");
+        if (cold && !Files.isWritable(DROP_CACHES)) {
+          throw new RecursiveWalkException("Cold runs need write access to " + DROP_CACHES);
+        }
+        final int iterations = arguments.getPositiveInt("iterations", DEFAULT_ITERATIONS);
+        final int warmup = arguments.getOption("warmup", Integer::parseInt, DEFAULT_WARMUP);
+        final HashFunction function = arguments.getOption("hash", HashFunctions::forName, HashFunctions.DEFAULT);
+
+        final Run run;
+        switch (mode) {
+          case "hash":
+            run = () -> hash(tree, function);
+            break;
+          case "visit":
+            run = () -> visit(tree);
+            break;
+          case "walk":
+            final Path input = Files.createTempFile("walk-benchmark", ".in");
+            final Path output = Files.createTempFile("walk-benchmark", ".out");
+            input.toFile().deleteOnExit();
+            output.toFile().deleteOnExit();
+            Files.write(input, Collections.singletonList(tree.toString()), StandardCharsets.UTF_8);
+            run = () -> walk(arguments, input, output);
+            break;
+          default:
+            throw new RecursiveWalkException("Unknown mode: " + mode);
+        }
+        System.out.printf("%s %s (%s)%n", mode, tree, function.getName());
+        measure(run, cold, warmup, iterations);
+      } catch (RecursiveWalkException e) {
+        System.out.println(e.getMessage());
+      } catch (IOException e) {
+        System.out.println("Error while running the benchmark: " + e.getMessage());
+      }
+    }
+}
@@ -0,0 +1,41 @@
+package ru.ifmo.rain.bandarchuk.walk.snapshot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Forward-only cursor over {@code (path, hash)} entries of a text manifest or a binary snapshot
+ * <br>
+ * Arrays returned by the getters are reused and only valid until the next call of {@link #next()}.
+ */
+interface ManifestCursor extends Closeable {
+
+    /**
+     * Moves to the next entry
+     *
+     * @return {@code false} if there are no entries left
+     * @throws IOException if the entry could not be read
+     */
+    boolean next() throws IOException;
+
+    /**
+     * @return buffer holding UTF-8 bytes of the current path in its first {@link #getPathLength()} bytes
+     */
+    byte[] getPath();
+
+    int getPathLength();
+
+    byte[] getHash();
+
+    /**
+     * Opens a binary snapshot or a text manifest, telling them apart by the snapshot magic number
+     *
+     * @param file manifest to open
+     * @return cursor over the manifest
+     * @throws IOException if the manifest could not be opened
+     */
+    static ManifestCursor open(final Path file) throws IOException {
+      return SnapshotReader.isSnapshot(file) ? SnapshotReader.open(file).cursor() : new ManifestReader(file);
+    }
+}
@@ -0,0 +1,170 @@
+package ru.ifmo.rain.bandarchuk.walk.snapshot;
+
+import ru.ifmo.rain.bandarchuk.walk.ResultWriter;
+import ru.ifmo.rain.bandarchuk.walk.exceptions.RecursiveWalkException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Streaming diff of two manifests sorted by path
+ * <br>
+ * Both manifests are read in lockstep, so memory use does not depend on their size. A manifest
+ * is either a binary snapshot or a text manifest sorted by the bytes of its paths, for example
+ * with {@code LC_ALL=C sort -k2}; repeated paths keep their first hash. Differences are written
+ * as {@code +<hash> <path>} for an added path, {@code -<hash> <path>} with the old hash for
+ * a removed one and {@code *<hash> <path>} with the new hash for a changed one.
+ * <br>
+ * Usage: {@code ManifestDiff <old manifest> <new manifest> <output file>}
+ */
+public class ManifestDiff {
+
+    private static final String USAGE = "Usage: <old manifest> <new manifest> <output file>";
+
+    private final ResultWriter resultWriter;
+
+    private long added;
+    private long removed;
+    private long changed;
+
+    /**
+     * Cursor skipping repeated paths and failing on paths out of order
+     */
+    private static class SortedCursor {
+      private final Path file;
+      private final ManifestCursor cursor;
+      private byte[] previous = new byte[256];
+      private int previousLength = -1;
+      private boolean hasEntry;
+
+      SortedCursor(final Path file) throws IOException {
+        this.file = file;
+        this.cursor = ManifestCursor.open(file);
+      }
+
+      boolean next() throws IOException {
+        while (hasEntry = cursor.next()) {
+          final int diff = previousLength < 0 ? 1 : SnapshotWriter.compare(
+            cursor.getPath(), cursor.getPathLength(), previous, previousLength);
+          if (diff < 0) {
+            throw new IOException("Manifest " + file + " is not sorted by path");
+          }
+          if (diff > 0) {
+            previousLength = cursor.getPathLength();
+            if (previous.length < previousLength) {
+              previous = Arrays.copyOf(cursor.getPath(), Math.max(previousLength, previous.length * 2));
+            } else {
+              System.arraycopy(cursor.getPath(), 0, previous, 0, previousLength);
+            }
+            return true;
+          }
+        }
+        return false;
+      }
+
+      int compareTo(final SortedCursor other) {
+        return SnapshotWriter.compare(cursor.getPath(), cursor.getPathLength(),
+          other.cursor.getPath(), other.cursor.getPathLength());
+      }
+
+      void close() throws IOException {
+        cursor.close();
+      }
+    }
+
+    /**
+     * @param resultWriter destination of differences
+     */
+    public ManifestDiff(final ResultWriter resultWriter) {
+      this.resultWriter = resultWriter;
+    }
+
+    private void write(final char marker, final ManifestCursor cursor) throws IOException {
+      resultWriter.write(marker, cursor.getHash(), cursor.getPath(), cursor.getPathLength());
+    }
+
+    /**
+     * Writes differences between two manifests
+     *
+     * @param oldManifest previous manifest
+     * @param newManifest current manifest
+     * @throws IOException if a manifest could not be read or is not sorted,
+     *                     or the manifests have digests of different lengths
+     */
+    public void diff(final Path oldManifest, final Path newManifest) throws IOException {
+      final SortedCursor before = new SortedCursor(oldManifest);
+      try {
+        final SortedCursor after = new SortedCursor(newManifest);
+        try {
+          boolean hasBefore = before.next();
+          boolean hasAfter = after.next();
+          while (hasBefore || hasAfter) {
+            final int diff = !hasBefore ? 1 : !hasAfter ? -1 : before.compareTo(after);
+            if (diff < 0) {
+              write('-', before.cursor);
+              removed++;
+              hasBefore = before.next();
+            } else if (diff > 0) {
+              write('+', after.cursor);
+              added++;
+              hasAfter = after.next();
+            } else {
+              if (before.cursor.getHash().length != after.cursor.getHash().length) {
+                throw new IOException("Manifests " + oldManifest + " and " + newManifest
+                  + " have digests of different lengths");
+              }
+              if (!Arrays.equals(before.cursor.getHash(), after.cursor.getHash())) {
+                write('*', after.cursor);
+                changed++;
+              }
+              hasBefore = before.next();
+              hasAfter = after.next();
+            }
+          }
+        } finally {
+          after.close();
+        }
+      } finally {
+        before.close();
+      }
+    }
+
+    public long getAdded() {
+      return added;
+    }
+
+    public long getRemoved() {
+      return removed;
+    }
+
+    public long getChanged() {
+      return changed;
+    }
+
+    @Override
+    public String toString() {
+      return "Added: " + added + ", removed: " + removed + ", changed: " + changed;
+    }
+
+    public static void main(String[] args) {
+      try {
+        if (args == null || args.length != 3 || Arrays.stream(args).anyMatch(Objects::isNull)) {
+          throw new RecursiveWalkException(USAGE);
+        }
+        final Path oldManifest = SnapshotTool.toPath(args[0]);
+        final Path newManifest = SnapshotTool.toPath(args[1]);
+        final Path output = SnapshotTool.toPath(args[2]);
+        try (ResultWriter resultWriter = new ResultWriter(output)) {
+          final ManifestDiff diff = new ManifestDiff(resultWriter);
+          diff.diff(oldManifest, newManifest);
+          System.out.println(diff);
+        } catch (IOException e) {
+          throw new RecursiveWalkException("Error while comparing manifests: " + e.getMessage(), e);
+        }
+      } catch (RecursiveWalkException e) {
+        System.out.println(e.getMessage());
+      }
+    }
+}
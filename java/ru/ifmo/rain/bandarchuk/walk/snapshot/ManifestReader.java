@@ -0,0 +1,130 @@
+package ru.ifmo.rain.bandarchuk.walk.snapshot;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Streams {@code <hex hash> <path>} lines of a text manifest written by the walk
+ * <br>
+ * Paths are kept as raw UTF-8 bytes, so the reader neither decodes nor allocates per line.
+ * Empty lines are skipped.
+ */
+class ManifestReader implements ManifestCursor {
+
+    private static final boolean CRLF = System.lineSeparator().equals("\r\n");
+
+    private final Path file;
+    private final InputStream in;
+
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private byte[] path = new byte[256];
+    private int pathLength;
+    private byte[] hash;
+    private long lineNumber;
+
+    ManifestReader(final Path file) throws IOException {
+      this.file = file;
+      this.in = new BufferedInputStream(Files.newInputStream(file), 64 * 1024);
+    }
+
+    private boolean readLine() throws IOException {
+      lineLength = 0;
+      int b;
+      while ((b = in.read()) >= 0 && b != '\n') {
+        if (lineLength == line.length) {
+          line = Arrays.copyOf(line, line.length * 2);
+        }
+        line[lineLength++] = (byte) b;
+      }
+      if (b < 0 && lineLength == 0) {
+        return false;
+      }
+      if (CRLF && lineLength > 0 && line[lineLength - 1] == '\r') {
+        lineLength--;
+      }
+      lineNumber++;
+      return true;
+    }
+
+    private static int hexDigit(final byte b) {
+      if (b >= '0' && b <= '9') {
+        return b - '0';
+      } else if (b >= 'a' && b <= 'f') {
+        return b - 'a' + 10;
+      } else if (b >= 'A' && b <= 'F') {
+        return b - 'A' + 10;
+      }
+      return -1;
+    }
+
+    private IOException malformed() {
+      return new IOException("Malformed line " + lineNumber + " of manifest " + file);
+    }
+
+    @Override
+    public boolean next() throws IOException {
+      do {
+        if (!readLine()) {
+          return false;
+        }
+      } while (lineLength == 0);
+
+      int separator = 0;
+      while (separator < lineLength && line[separator] != ' ') {
+        separator++;
+      }
+      if (separator == lineLength || separator == 0 || separator % 2 != 0
+        || hash != null && separator != hash.length * 2) {
+        throw malformed();
+      }
+      if (hash == null) {
+        hash = new byte[separator / 2];
+      }
+      for (int index = 0; index < hash.length; index++) {
+        final int high = hexDigit(line[2 * index]);
+        final int low = hexDigit(line[2 * index + 1]);
+        if (high < 0 || low < 0) {
+          throw malformed();
+        }
+        hash[index] = (byte) (high << 4 | low);
+      }
+      pathLength = lineLength - separator - 1;
+      if (path.length < pathLength) {
+        path = Arrays.copyOf(path, Math.max(pathLength, path.length * 2));
+      }
+      System.arraycopy(line, separator + 1, path, 0, pathLength);
+      return true;
+    }
+
+    /**
+     * @return digest length in bytes, or {@code -1} before the first entry
+     */
+    int getHashLength() {
+      return hash == null ? -1 : hash.length;
+    }
+
+    @Override
+    public byte[] getHash() {
+      return hash;
+    }
+
+    @Override
+    public byte[] getPath() {
+      return path;
+    }
+
+    @Override
+    public int getPathLength() {
+      return pathLength;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+}
@@ -0,0 +1,80 @@
+package ru.ifmo.rain.bandarchuk.walk.snapshot;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only memory mapping of a file of any size, split into segments of {@code 2^30} bytes
+ */
+public class MappedFile {
+
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+    private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private final MappedByteBuffer[] segments;
+    private final long size;
+
+    public MappedFile(final Path file) throws IOException {
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+        size = channel.size();
+        segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_BITS)];
+        for (int index = 0; index < segments.length; index++) {
+          final long position = (long) index << SEGMENT_BITS;
+          segments[index] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(SEGMENT_SIZE, size - position));
+        }
+      }
+    }
+
+    public long size() {
+      return size;
+    }
+
+    private void check(final long position, final int length) {
+      if (position < 0 || position + length > size) {
+        throw new IndexOutOfBoundsException("Position " + position + " is out of the file of size " + size);
+      }
+    }
+
+    public byte get(final long position) {
+      check(position, 1);
+      return segments[(int) (position >>> SEGMENT_BITS)].get((int) (position & SEGMENT_MASK));
+    }
+
+    public void get(final long position, final byte[] bytes, final int offset, final int length) {
+      check(position, length);
+      for (int index = 0; index < length; index++) {
+        final long current = position + index;
+        bytes[offset + index] = segments[(int) (current >>> SEGMENT_BITS)].get((int) (current & SEGMENT_MASK));
+      }
+    }
+
+    public int getInt(final long position) {
+      check(position, Integer.BYTES);
+      final int offset = (int) (position & SEGMENT_MASK);
+      if (offset + Integer.BYTES <= SEGMENT_SIZE) {
+        return segments[(int) (position >>> SEGMENT_BITS)].getInt(offset);
+      }
+      int result = 0;
+      for (int index = 0; index < Integer.BYTES; index++) {
+        result = (result << Byte.SIZE) | Byte.toUnsignedInt(get(position + index));
+      }
+      return result;
+    }
+
+    public long getLong(final long position) {
+      check(position, Long.BYTES);
+      final int offset = (int) (position & SEGMENT_MASK);
+      if (offset + Long.BYTES <= SEGMENT_SIZE) {
+        return segments[(int) (position >>> SEGMENT_BITS)].getLong(offset);
+      }
+      long result = 0;
+      for (int index = 0; index < Long.BYTES; index++) {
+        result = (result << Byte.SIZE) | Byte.toUnsignedLong(get(position + index));
+      }
+      return result;
+    }
+}
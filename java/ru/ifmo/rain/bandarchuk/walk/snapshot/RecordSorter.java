@@ -0,0 +1,287 @@
+package ru.ifmo.rain.bandarchuk.walk.snapshot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * External merge sort of byte records
+ * <br>
+ * Added records are buffered until they take the memory budget, then sorted and spilled to
+ * a temporary run file as length-prefixed records. {@link #sorted()} merges all runs at once;
+ * records equal by the comparator keep the order they were added in. Run files are deleted
+ * on {@link #close()}. Adding is thread-safe: a full buffer is swapped for an empty one under the lock
+ * and sorted and spilled by the adding thread outside of it, so other threads keep adding meanwhile.
+ */
+public class RecordSorter implements Closeable {
+
+    /**
+     * Default budget of buffered records in bytes
+     */
+    public static final long DEFAULT_BUDGET = 64L * 1024 * 1024;
+
+    /**
+     * Heap taken by a buffered record besides its bytes: the array header and the list reference
+     */
+    private static final int RECORD_OVERHEAD = 32;
+    private static final int RUN_BUFFER_SIZE = 64 * 1024;
+
+    private final Comparator<byte[]> comparator;
+    private final Path directory;
+    private final long budget;
+
+    private List<byte[]> buffer = new ArrayList<>();
+    private long buffered = 0;
+
+    /**
+     * Runs in the order their records were added, {@code null} while being spilled or if spilling failed
+     */
+    private final List<Run> runs = new ArrayList<>();
+    private int spilling = 0;
+
+    private static class Run {
+      private final Path file;
+      private final int count;
+
+      Run(final Path file, final int count) {
+        this.file = file;
+        this.count = count;
+      }
+    }
+
+    /**
+     * Cursor over sorted records
+     */
+    public interface Cursor extends Closeable {
+      /**
+       * @return next record, or {@code null} if there are none left
+       * @throws IOException if a run could not be read
+       */
+      byte[] next() throws IOException;
+    }
+
+    /**
+     * @param comparator order of records
+     * @param directory  directory of run files, {@code null} for the default temporary directory
+     * @param budget     bytes of records buffered before they are spilled
+     */
+    public RecordSorter(final Comparator<byte[]> comparator, final Path directory, final long budget) {
+      if (budget <= 0) {
+        throw new IllegalArgumentException("Memory budget should be positive: " + budget);
+      }
+      this.comparator = comparator;
+      this.directory = directory;
+      this.budget = budget;
+    }
+
+    public RecordSorter(final Comparator<byte[]> comparator, final Path directory) {
+      this(comparator, directory, DEFAULT_BUDGET);
+    }
+
+    /**
+     * @param record record to sort, not copied
+     * @throws IOException if the buffered records could not be spilled
+     */
+    public void add(final byte[] record) throws IOException {
+      final List<byte[]> full;
+      final int index;
+      synchronized (this) {
+        buffer.add(record);
+        buffered += record.length + RECORD_OVERHEAD;
+        if (buffered < budget) {
+          return;
+        }
+        full = buffer;
+        buffer = new ArrayList<>();
+        buffered = 0;
+        index = runs.size();
+        runs.add(null);
+        spilling++;
+      }
+
+      Run run = null;
+      try {
+        run = spill(full);
+      } finally {
+        synchronized (this) {
+          runs.set(index, run);
+          spilling--;
+          notifyAll();
+        }
+      }
+    }
+
+    /**
+     * Sorts the records and writes them to a new run file
+     */
+    private Run spill(final List<byte[]> records) throws IOException {
+      records.sort(comparator);
+      final Path file = directory == null
+        ? Files.createTempFile("records", ".run")
+        : Files.createTempFile(directory, "records", ".run");
+      try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(file), RUN_BUFFER_SIZE))) {
+        for (byte[] record : records) {
+          out.writeInt(record.length);
+          out.write(record);
+        }
+      } catch (IOException e) {
+        Files.deleteIfExists(file);
+        throw e;
+      }
+      return new Run(file, records.size());
+    }
+
+    /**
+     * Waits until no runs are being spilled by other threads
+     */
+    private void awaitSpills() throws IOException {
+      try {
+        while (spilling > 0) {
+          wait();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while spilling records");
+      }
+    }
+
+    /**
+     * Finishes adding and merges the records
+     *
+     * @return cursor over all added records in order
+     * @throws IOException if the runs could not be written or opened
+     */
+    public synchronized Cursor sorted() throws IOException {
+      awaitSpills();
+      if (runs.contains(null)) {
+        throw new IOException("Records could not be spilled");
+      }
+      if (runs.isEmpty()) {
+        buffer.sort(comparator);
+        final Iterator<byte[]> iterator = buffer.iterator();
+        return new Cursor() {
+          @Override
+          public byte[] next() {
+            return iterator.hasNext() ? iterator.next() : null;
+          }
+
+          @Override
+          public void close() {
+          }
+        };
+      }
+      if (!buffer.isEmpty()) {
+        runs.add(spill(buffer));
+        buffer = new ArrayList<>();
+        buffered = 0;
+      }
+      return new Merge();
+    }
+
+    private static class RunReader {
+      private final int index;
+      private final DataInputStream in;
+      private int remaining;
+      private byte[] head;
+
+      RunReader(final int index, final Run run) throws IOException {
+        this.index = index;
+        this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run.file), RUN_BUFFER_SIZE));
+        this.remaining = run.count;
+      }
+
+      /**
+       * @return whether the run has one more record
+       */
+      boolean advance() throws IOException {
+        if (remaining == 0) {
+          head = null;
+          return false;
+        }
+        remaining--;
+        head = new byte[in.readInt()];
+        in.readFully(head);
+        return true;
+      }
+    }
+
+    private class Merge implements Cursor {
+      private final List<RunReader> readers = new ArrayList<>();
+      private final PriorityQueue<RunReader> heads = new PriorityQueue<>((first, second) -> {
+        final int diff = comparator.compare(first.head, second.head);
+        return diff != 0 ? diff : Integer.compare(first.index, second.index);
+      });
+
+      Merge() throws IOException {
+        try {
+          for (int index = 0; index < runs.size(); index++) {
+            final RunReader reader = new RunReader(index, runs.get(index));
+            readers.add(reader);
+            if (reader.advance()) {
+              heads.add(reader);
+            }
+          }
+        } catch (IOException e) {
+          close();
+          throw e;
+        }
+      }
+
+      @Override
+      public byte[] next() throws IOException {
+        final RunReader reader = heads.poll();
+        if (reader == null) {
+          return null;
+        }
+        final byte[] record = reader.head;
+        if (reader.advance()) {
+          heads.add(reader);
+        }
+        return record;
+      }
+
+      @Override
+      public void close() throws IOException {
+        IOException failure = null;
+        for (RunReader reader : readers) {
+          try {
+            reader.in.close();
+          } catch (IOException e) {
+            failure = e;
+          }
+        }
+        if (failure != null) {
+          throw failure;
+        }
+      }
+    }
+
+    /**
+     * Deletes the run files
+     *
+     * @throws IOException if a run file could not be deleted
+     */
+    @Override
+    public synchronized void close() throws IOException {
+      awaitSpills();
+      buffer.clear();
+      for (Run run : runs) {
+        if (run != null) {
+          Files.deleteIfExists(run.file);
+        }
+      }
+      runs.clear();
+    }
+}
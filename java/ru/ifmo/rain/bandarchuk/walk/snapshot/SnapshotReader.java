@@ -0,0 +1,293 @@
+package ru.ifmo.rain.bandarchuk.walk.snapshot;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Memory-mapped reader of binary snapshots written by {@link SnapshotWriter}
+ * <br>
+ * Looking up the hash of a path binary searches the first paths of blocks and then decodes
+ * a single block; looking up paths by hash binary searches the hash index. Nothing but
+ * the touched pages is read. Not thread-safe.
+ */
+public class SnapshotReader {
+
+    private final MappedFile file;
+    private final int hashLength;
+    private final int count;
+    private final long blockIndex;
+    private final long hashes;
+    private final long hashIndex;
+
+    private final Decoder decoder = new Decoder();
+
+    private SnapshotReader(final MappedFile file) throws IOException {
+      this.file = file;
+      if (file.size() < SnapshotWriter.HEADER_SIZE || file.getInt(0) != SnapshotWriter.MAGIC) {
+        throw new IOException("Not a walk snapshot");
+      }
+      hashLength = file.getInt(SnapshotWriter.HASH_LENGTH);
+      count = file.getInt(SnapshotWriter.COUNT);
+      blockIndex = file.getLong(SnapshotWriter.BLOCK_INDEX);
+      hashes = file.getLong(SnapshotWriter.HASHES);
+      hashIndex = file.getLong(SnapshotWriter.HASH_INDEX);
+      if (hashLength <= 0 || count < 0
+        || blockIndex + (long) getBlockCount() * Long.BYTES > hashes
+        || hashes + (long) count * hashLength > hashIndex
+        || hashIndex + (long) count * Integer.BYTES > file.size()) {
+        throw new IOException("Corrupted walk snapshot");
+      }
+    }
+
+    /**
+     * @param snapshot snapshot to map
+     * @return reader of the snapshot
+     * @throws IOException if the file could not be mapped or is not a snapshot
+     */
+    public static SnapshotReader open(final Path snapshot) throws IOException {
+      return new SnapshotReader(new MappedFile(snapshot));
+    }
+
+    /**
+     * @param snapshot file to check
+     * @return whether the file starts with the snapshot magic number
+     * @throws IOException if the file could not be read
+     */
+    public static boolean isSnapshot(final Path snapshot) throws IOException {
+      try (DataInputStream in = new DataInputStream(Files.newInputStream(snapshot))) {
+        return in.readInt() == SnapshotWriter.MAGIC;
+      } catch (EOFException e) {
+        return false;
+      }
+    }
+
+    public int getHashLength() {
+      return hashLength;
+    }
+
+    public int size() {
+      return count;
+    }
+
+    private int getBlockCount() {
+      return (count + SnapshotWriter.BLOCK_SIZE - 1) / SnapshotWriter.BLOCK_SIZE;
+    }
+
+    /**
+     * Sequential decoder of front-coded paths
+     */
+    private class Decoder {
+      private long position;
+      private byte[] path = new byte[256];
+      private int pathLength;
+
+      private int readVarInt() {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+          b = file.get(position++);
+          value |= (b & 0x7f) << shift;
+          shift += 7;
+        } while (b < 0);
+        return value;
+      }
+
+      private void readPath(final int shared) {
+        final int suffix = readVarInt();
+        pathLength = shared + suffix;
+        if (path.length < pathLength) {
+          path = Arrays.copyOf(path, Math.max(pathLength, path.length * 2));
+        }
+        file.get(position, path, shared, suffix);
+        position += suffix;
+      }
+
+      /**
+       * Decodes the first path of the block
+       */
+      void readFirst(final int block) {
+        position = SnapshotWriter.HEADER_SIZE + file.getLong(blockIndex + (long) block * Long.BYTES);
+        readPath(0);
+      }
+
+      /**
+       * Decodes the path following the current one within the block
+       */
+      void readNext() {
+        readPath(readVarInt());
+      }
+
+      void decode(final int entry) {
+        readFirst(entry / SnapshotWriter.BLOCK_SIZE);
+        for (int index = entry % SnapshotWriter.BLOCK_SIZE; index > 0; index--) {
+          readNext();
+        }
+      }
+
+      int compareTo(final byte[] target) {
+        return SnapshotWriter.compare(path, pathLength, target, target.length);
+      }
+    }
+
+    /**
+     * @param entry number of the entry in path order
+     * @return path of the entry
+     */
+    public String getPath(final int entry) {
+      checkEntry(entry);
+      decoder.decode(entry);
+      return new String(decoder.path, 0, decoder.pathLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param entry number of the entry in path order
+     * @return hash of the entry
+     */
+    public byte[] getHash(final int entry) {
+      checkEntry(entry);
+      final byte[] hash = new byte[hashLength];
+      file.get(hashes + (long) entry * hashLength, hash, 0, hashLength);
+      return hash;
+    }
+
+    private void checkEntry(final int entry) {
+      if (entry < 0 || entry >= count) {
+        throw new IndexOutOfBoundsException("Entry " + entry + " of " + count);
+      }
+    }
+
+    /**
+     * @param target UTF-8 bytes of the path
+     * @return number of the entry with the path, or {@code -1} if there is none
+     */
+    public int find(final byte[] target) {
+      int low = 0;
+      int high = getBlockCount() - 1;
+      while (low < high) {
+        final int middle = (low + high + 1) >>> 1;
+        decoder.readFirst(middle);
+        if (decoder.compareTo(target) <= 0) {
+          low = middle;
+        } else {
+          high = middle - 1;
+        }
+      }
+      if (count == 0) {
+        return -1;
+      }
+
+      decoder.readFirst(low);
+      final int end = Math.min(count, (low + 1) * SnapshotWriter.BLOCK_SIZE);
+      for (int entry = low * SnapshotWriter.BLOCK_SIZE; entry < end; entry++) {
+        if (entry > low * SnapshotWriter.BLOCK_SIZE) {
+          decoder.readNext();
+        }
+        final int diff = decoder.compareTo(target);
+        if (diff == 0) {
+          return entry;
+        } else if (diff > 0) {
+          break;
+        }
+      }
+      return -1;
+    }
+
+    /**
+     * @param path path to look up
+     * @return hash of the path, or {@code null} if the snapshot has no such path
+     */
+    public byte[] getHash(final String path) {
+      final int entry = find(path.getBytes(StandardCharsets.UTF_8));
+      return entry < 0 ? null : getHash(entry);
+    }
+
+    private int compareHash(final int position, final byte[] hash) {
+      final long offset = hashes + (long) file.getInt(hashIndex + (long) position * Integer.BYTES) * hashLength;
+      for (int index = 0; index < hashLength; index++) {
+        final int diff = Byte.toUnsignedInt(file.get(offset + index)) - Byte.toUnsignedInt(hash[index]);
+        if (diff != 0) {
+          return diff;
+        }
+      }
+      return 0;
+    }
+
+    /**
+     * @param hash hash to look up
+     * @return paths with the hash in path order
+     */
+    public List<String> getPaths(final byte[] hash) {
+      final List<String> result = new ArrayList<>();
+      if (hash.length != hashLength) {
+        return result;
+      }
+      int low = 0;
+      int high = count;
+      while (low < high) {
+        final int middle = (low + high) >>> 1;
+        if (compareHash(middle, hash) < 0) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+      for (int position = low; position < count && compareHash(position, hash) == 0; position++) {
+        result.add(getPath(file.getInt(hashIndex + (long) position * Integer.BYTES)));
+      }
+      return result;
+    }
+
+    /**
+     * @return cursor over entries in path order, independent of lookups through this reader
+     */
+    ManifestCursor cursor() {
+      return new ManifestCursor() {
+        private final Decoder cursorDecoder = new Decoder();
+        private final byte[] hash = new byte[hashLength];
+        private int entry = -1;
+
+        @Override
+        public boolean next() {
+          if (entry + 1 >= count) {
+            entry = count;
+            return false;
+          }
+          entry++;
+          if (entry % SnapshotWriter.BLOCK_SIZE == 0) {
+            cursorDecoder.readFirst(entry / SnapshotWriter.BLOCK_SIZE);
+          } else {
+            cursorDecoder.readNext();
+          }
+          file.get(hashes + (long) entry * hashLength, hash, 0, hashLength);
+          return true;
+        }
+
+        @Override
+        public byte[] getPath() {
+          return cursorDecoder.path;
+        }
+
+        @Override
+        public int getPathLength() {
+          return cursorDecoder.pathLength;
+        }
+
+        @Override
+        public byte[] getHash() {
+          return hash;
+        }
+
+        @Override
+        public void close() {
+        }
+      };
+    }
+}
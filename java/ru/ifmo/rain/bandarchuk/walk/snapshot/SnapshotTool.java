@@ -0,0 +1,102 @@
+package ru.ifmo.rain.bandarchuk.walk.snapshot;
+
+import ru.ifmo.rain.bandarchuk.walk.exceptions.RecursiveWalkException;
+
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Builds and queries binary snapshots of walk output
+ * <br>
+ * Usage:
+ * <ul>
+ * <li>{@code SnapshotTool build <manifest> <snapshot>} converts a text manifest;</li>
+ * <li>{@code SnapshotTool path <snapshot> <path>} prints the hash of the path;</li>
+ * <li>{@code SnapshotTool hash <snapshot> <hex hash>} prints all paths with the hash.</li>
+ * </ul>
+ */
+public class SnapshotTool {
+
+    private static final String USAGE = "Usage: build <manifest> <snapshot>"
+      + " | path <snapshot> <path> | hash <snapshot> <hex hash>";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    static String toHex(final byte[] hash) {
+      final StringBuilder builder = new StringBuilder(hash.length * 2);
+      for (byte b : hash) {
+        builder.append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
+      }
+      return builder.toString();
+    }
+
+    static byte[] fromHex(final String hex) throws RecursiveWalkException {
+      if (hex.isEmpty() || hex.length() % 2 != 0) {
+        throw new RecursiveWalkException("Invalid hash: '" + hex + "'");
+      }
+      final byte[] hash = new byte[hex.length() / 2];
+      for (int index = 0; index < hash.length; index++) {
+        final int high = Character.digit(hex.charAt(2 * index), 16);
+        final int low = Character.digit(hex.charAt(2 * index + 1), 16);
+        if (high < 0 || low < 0) {
+          throw new RecursiveWalkException("Invalid hash: '" + hex + "'");
+        }
+        hash[index] = (byte) (high << 4 | low);
+      }
+      return hash;
+    }
+
+    static Path toPath(final String path) throws RecursiveWalkException {
+      try {
+        return Paths.get(path);
+      } catch (InvalidPathException e) {
+        throw new RecursiveWalkException("Invalid path: '" + path + "'");
+      }
+    }
+
+    public static void main(String[] args) {
+      try {
+        if (args == null || args.length != 3 || Arrays.stream(args).anyMatch(Objects::isNull)) {
+          throw new RecursiveWalkException(USAGE);
+        }
+        switch (args[0]) {
+          case "build":
+            try {
+              SnapshotWriter.convert(toPath(args[1]), toPath(args[2]));
+            } catch (IOException e) {
+              throw new RecursiveWalkException("Error while building snapshot: " + e.getMessage(), e);
+            }
+            break;
+          case "path":
+          case "hash":
+            final SnapshotReader reader;
+            try {
+              reader = SnapshotReader.open(toPath(args[1]));
+            } catch (IOException e) {
+              throw new RecursiveWalkException("Error while opening snapshot: " + e.getMessage(), e);
+            }
+            if (args[0].equals("path")) {
+              final byte[] hash = reader.getHash(args[2]);
+              if (hash == null) {
+                throw new RecursiveWalkException("No such path: '" + args[2] + "'");
+              }
+              System.out.println(toHex(hash) + " " + args[2]);
+            } else {
+              final byte[] hash = fromHex(args[2]);
+              for (String path : reader.getPaths(hash)) {
+                System.out.println(toHex(hash) + " " + path);
+              }
+            }
+            break;
+          default:
+            throw new RecursiveWalkException(USAGE);
+        }
+      } catch (RecursiveWalkException e) {
+        System.out.println(e.getMessage());
+      }
+    }
+}
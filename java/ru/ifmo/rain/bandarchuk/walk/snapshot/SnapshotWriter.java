@@ -0,0 +1,284 @@
+package ru.ifmo.rain.bandarchuk.walk.snapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Writes binary snapshots of walk output
+ * <br>
+ * A snapshot consists of a fixed header followed by four sections:
+ * <ul>
+ * <li>paths sorted by their unsigned UTF-8 bytes and front-coded in blocks of {@value #BLOCK_SIZE}:
+ * the first path of a block is stored whole, every other one as the length of the prefix shared
+ * with the previous path and the remaining suffix, all lengths as unsigned LEB128 varints;</li>
+ * <li>the sparse block index: offset of every block from the start of the paths section;</li>
+ * <li>the hash column: fixed-width digests in path order;</li>
+ * <li>the hash index: entry numbers ordered by digest.</li>
+ * </ul>
+ * Duplicate paths keep their first hash. All numbers are big-endian.
+ * <br>
+ * Entries are sorted with {@link RecordSorter}, by path and then by digest, so manifests
+ * much larger than the memory are converted in sorted runs spilled to temporary files.
+ *
+ * @see SnapshotReader
+ */
+public class SnapshotWriter {
+
+    static final int MAGIC = 0x57534e31;
+    static final int BLOCK_SIZE = 64;
+
+    static final int HASH_LENGTH = Integer.BYTES;
+    static final int COUNT = HASH_LENGTH + Integer.BYTES;
+    static final int BLOCK_INDEX = COUNT + Integer.BYTES;
+    static final int HASHES = BLOCK_INDEX + Long.BYTES;
+    static final int HASH_INDEX = HASHES + Long.BYTES;
+    static final int HEADER_SIZE = HASH_INDEX + Long.BYTES;
+
+    private final int hashLength;
+    private final Path directory;
+    private final long budget;
+
+    /**
+     * Entries as UTF-8 bytes of the path followed by the digest
+     */
+    private final RecordSorter entries;
+
+    /**
+     * @param hashLength digest length in bytes
+     * @param directory  directory of temporary files, {@code null} for the default temporary directory
+     * @param budget     bytes of entries sorted in memory at once
+     */
+    SnapshotWriter(final int hashLength, final Path directory, final long budget) {
+      if (hashLength <= 0) {
+        throw new IllegalArgumentException("Digest length should be positive: " + hashLength);
+      }
+      this.hashLength = hashLength;
+      this.directory = directory;
+      this.budget = budget;
+      this.entries = new RecordSorter((first, second) ->
+        compare(first, first.length - hashLength, second, second.length - hashLength), directory, budget);
+    }
+
+    /**
+     * @param hashLength digest length in bytes
+     * @param directory  directory of temporary files, {@code null} for the default temporary directory
+     */
+    public SnapshotWriter(final int hashLength, final Path directory) {
+      this(hashLength, directory, RecordSorter.DEFAULT_BUDGET);
+    }
+
+    /**
+     * @param hashLength digest length in bytes
+     */
+    public SnapshotWriter(final int hashLength) {
+      this(hashLength, null);
+    }
+
+    public void add(final String path, final byte[] hash) throws IOException {
+      add(path.getBytes(StandardCharsets.UTF_8), hash);
+    }
+
+    /**
+     * @param path UTF-8 bytes of the path
+     * @param hash digest of the path
+     * @throws IOException if sorted entries could not be spilled
+     */
+    public void add(final byte[] path, final byte[] hash) throws IOException {
+      add(path, path.length, hash);
+    }
+
+    private void add(final byte[] path, final int pathLength, final byte[] hash) throws IOException {
+      if (hash.length != hashLength) {
+        throw new IllegalArgumentException("Expected a digest of " + hashLength + " bytes, found " + hash.length);
+      }
+      final byte[] record = Arrays.copyOf(path, pathLength + hashLength);
+      System.arraycopy(hash, 0, record, pathLength, hashLength);
+      entries.add(record);
+    }
+
+    static int compare(final byte[] first, final int firstLength, final byte[] second, final int secondLength) {
+      final int common = Math.min(firstLength, secondLength);
+      for (int index = 0; index < common; index++) {
+        final int diff = Byte.toUnsignedInt(first[index]) - Byte.toUnsignedInt(second[index]);
+        if (diff != 0) {
+          return diff;
+        }
+      }
+      return firstLength - secondLength;
+    }
+
+    static int compare(final byte[] first, final byte[] second) {
+      return compare(first, first.length, second, second.length);
+    }
+
+    private static class CountingOutput extends FilterOutputStream {
+      private long position;
+
+      CountingOutput(final OutputStream out, final long position) {
+        super(out);
+        this.position = position;
+      }
+
+      @Override
+      public void write(final int b) throws IOException {
+        out.write(b);
+        position++;
+      }
+
+      @Override
+      public void write(final byte[] b, final int off, final int len) throws IOException {
+        out.write(b, off, len);
+        position += len;
+      }
+    }
+
+    private static void writeVarInt(final DataOutputStream out, int value) throws IOException {
+      while ((value & ~0x7f) != 0) {
+        out.write((value & 0x7f) | 0x80);
+        value >>>= 7;
+      }
+      out.write(value);
+    }
+
+
+    /**
+     * Writes added entries to the snapshot, replacing it atomically
+     *
+     * @param snapshot location of the snapshot
+     * @throws IOException if the snapshot could not be written
+     */
+    public void write(final Path snapshot) throws IOException {
+      final String prefix = snapshot.getFileName().toString();
+      final Path temporary = Files.createTempFile(snapshot.toAbsolutePath().getParent(), prefix, ".tmp");
+      final Path hashColumn = directory == null
+        ? Files.createTempFile(prefix, ".hashes")
+        : Files.createTempFile(directory, prefix, ".hashes");
+      try (
+        RecordSorter byPath = entries;
+        // entries as digests followed by big-endian entry numbers, ordered by both
+        RecordSorter byHash = new RecordSorter(SnapshotWriter::compare, directory, budget)
+      ) {
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+          channel.position(HEADER_SIZE);
+          final CountingOutput counter = new CountingOutput(
+            new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024), HEADER_SIZE);
+          final DataOutputStream out = new DataOutputStream(counter);
+
+          long[] blocks = new long[16];
+          int count = 0;
+          try (
+            RecordSorter.Cursor cursor = byPath.sorted();
+            OutputStream hashes = new BufferedOutputStream(Files.newOutputStream(hashColumn), 64 * 1024)
+          ) {
+            byte[] previous = null;
+            int previousLength = 0;
+            byte[] record;
+            while ((record = cursor.next()) != null) {
+              final int pathLength = record.length - hashLength;
+              if (previous != null && compare(previous, previousLength, record, pathLength) == 0) {
+                continue;
+              }
+              if (count % BLOCK_SIZE == 0) {
+                if (count / BLOCK_SIZE == blocks.length) {
+                  blocks = Arrays.copyOf(blocks, blocks.length * 2);
+                }
+                blocks[count / BLOCK_SIZE] = counter.position - HEADER_SIZE;
+                writeVarInt(out, pathLength);
+                out.write(record, 0, pathLength);
+              } else {
+                int shared = 0;
+                while (shared < pathLength && shared < previousLength && record[shared] == previous[shared]) {
+                  shared++;
+                }
+                writeVarInt(out, shared);
+                writeVarInt(out, pathLength - shared);
+                out.write(record, shared, pathLength - shared);
+              }
+              hashes.write(record, pathLength, hashLength);
+              byHash.add(ByteBuffer.allocate(hashLength + Integer.BYTES)
+                .put(record, pathLength, hashLength).putInt(count).array());
+              previous = record;
+              previousLength = pathLength;
+              count++;
+            }
+          }
+
+          final long blockIndex = counter.position;
+          for (int block = 0; block < (count + BLOCK_SIZE - 1) / BLOCK_SIZE; block++) {
+            out.writeLong(blocks[block]);
+          }
+          final long hashes = counter.position;
+          Files.copy(hashColumn, out);
+          final long hashIndex = counter.position;
+          try (RecordSorter.Cursor cursor = byHash.sorted()) {
+            byte[] record;
+            while ((record = cursor.next()) != null) {
+              out.write(record, hashLength, Integer.BYTES);
+            }
+          }
+          out.flush();
+
+          final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+          header.putInt(MAGIC).putInt(hashLength).putInt(count)
+            .putLong(blockIndex).putLong(hashes).putLong(hashIndex).flip();
+          while (header.hasRemaining()) {
+            channel.write(header, header.position());
+          }
+        }
+        Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(temporary);
+        Files.deleteIfExists(hashColumn);
+      }
+    }
+
+    /**
+     * Adds entries of a text manifest
+     *
+     * @param manifest {@code <hex hash> <path>} lines written by the walk
+     * @return this writer
+     * @throws IOException if the manifest could not be read or has digests of another length
+     */
+    public SnapshotWriter addManifest(final Path manifest) throws IOException {
+      try (ManifestReader reader = new ManifestReader(manifest)) {
+        while (reader.next()) {
+          if (reader.getHashLength() != hashLength) {
+            throw new IOException("Manifest " + manifest + " has digests of " + reader.getHashLength()
+              + " bytes instead of " + hashLength);
+          }
+          add(reader.getPath(), reader.getPathLength(), reader.getHash());
+        }
+      }
+      return this;
+    }
+
+    /**
+     * Converts a non-empty text manifest into a binary snapshot, taking the digest length from its first entry
+     *
+     * @param manifest {@code <hex hash> <path>} lines written by the walk
+     * @param snapshot location of the snapshot
+     * @throws IOException if the manifest could not be read or the snapshot could not be written
+     */
+    public static void convert(final Path manifest, final Path snapshot) throws IOException {
+      final int hashLength;
+      try (ManifestReader reader = new ManifestReader(manifest)) {
+        if (!reader.next()) {
+          throw new IOException("Manifest " + manifest + " has no entries to take the digest length from");
+        }
+        hashLength = reader.getHashLength();
+      }
+      new SnapshotWriter(hashLength, snapshot.toAbsolutePath().getParent()).addManifest(manifest).write(snapshot);
+    }
+}
@@ -0,0 +1,23 @@
+#!/usr/bin/env bash
+# Usage: ./unit_test.sh [test class...]
+# Compiles the walk and set packages with the unit tests from ../test and runs the given tests, all of them by default.
+
+OUT=$(mktemp -d)
+CP=../lib/junit-4.11.jar:../lib/hamcrest-core-1.3.jar
+
+echo "Start compiling..."
+javac -d "$OUT" -cp "$CP" ru/ifmo/rain/bandarchuk/walk/*.java ru/ifmo/rain/bandarchuk/walk/*/*.java \
+  ru/ifmo/rain/bandarchuk/set/*.java $(find ../test -name '*.java') || exit 1
+
+if [ $# -gt 0 ]; then
+  TESTS="$*"
+else
+  TESTS=$(cd ../test && find . -name '*Test.java' | sed 's|^\./||; s|\.java$||; s|/|.|g' | sort)
+fi
+
+echo "Running tests..."
+java -cp "$OUT:$CP" org.junit.runner.JUnitCore $TESTS
+STATUS=$?
+
+rm -rf "$OUT"
+exit $STATUS
@@ -0,0 +1,36 @@
+#!/usr/bin/env bash
+# Usage: ./walk_bench.sh [tree root] [scale] [--cold]
+# Generates the synthetic trees once and runs hot (and, as root, cold) walk benchmarks on them.
+
+ROOT=${1:-/tmp/walk-benchmark}
+SCALE=${2:-1}
+COLD=$3
+OUT=$(mktemp -d)
+# generated names and benchmarked walks use the same encoding
+export LC_ALL=C.UTF-8
+
+echo "Start compiling..."
+javac -d "$OUT" ru/ifmo/rain/bandarchuk/walk/*.java ru/ifmo/rain/bandarchuk/walk/*/*.java || exit 1
+
+if [ ! -d "$ROOT" ]; then
+  echo "Generating trees in $ROOT..."
+  java -cp "$OUT" \
+    ru.ifmo.rain.bandarchuk.walk.benchmark.TreeGenerator "$ROOT" all "$SCALE" || exit 1
+  # names that are not valid UTF-8 cannot be created from Java
+  for i in $(seq 1 200); do
+    mkdir -p "$ROOT/names/$(printf 'latin1-\xe9\xe8-%d' "$i")"
+    echo "$i" > "$ROOT/names/$(printf 'latin1-\xe9\xe8-%d' "$i")/$(printf '\xff\xfe-%d' "$i")"
+  done
+fi
+
+for TREE in tiny huge deep names; do
+  for MODE in hash visit walk; do
+    java -cp "$OUT" ru.ifmo.rain.bandarchuk.walk.benchmark.WalkBenchmark "$ROOT/$TREE" --mode=$MODE
+    if [ "$COLD" == "--cold" ]; then
+      java -cp "$OUT" ru.ifmo.rain.bandarchuk.walk.benchmark.WalkBenchmark "$ROOT/$TREE" --mode=$MODE --cold --warmup=1
+    fi
+  done
+  java -cp "$OUT" ru.ifmo.rain.bandarchuk.walk.benchmark.WalkBenchmark "$ROOT/$TREE" --mode=walk --fork-join
+done
+
+rm -rf "$OUT"
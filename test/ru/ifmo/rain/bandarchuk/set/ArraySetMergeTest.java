@@ -0,0 +1,136 @@
+package ru.ifmo.rain.bandarchuk.set;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.function.BinaryOperator;
+
+/**
+ * Set operations of {@link ArraySet} checked against {@link TreeSet}
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ArraySetMergeTest {
+
+  private static final Random RANDOM = new Random(5723498572349857L);
+  private static final int[][] SIZES = {{0, 0}, {0, 10}, {10, 0}, {1, 1}, {10, 10}, {100, 1000}, {1, 1000},
+    {1000, 1}, {5, 10000}, {10000, 5}, {1000, 1000}};
+
+  @Test
+  public void test01_union() {
+    test((first, second) -> {
+      TreeSet<Integer> result = new TreeSet<>(first);
+      result.addAll(second);
+      return result;
+    }, ArraySet::union);
+  }
+
+  @Test
+  public void test02_intersect() {
+    test((first, second) -> {
+      TreeSet<Integer> result = new TreeSet<>(first);
+      result.retainAll(second);
+      return result;
+    }, ArraySet::intersect);
+  }
+
+  @Test
+  public void test03_difference() {
+    test((first, second) -> {
+      TreeSet<Integer> result = new TreeSet<>(first);
+      result.removeAll(second);
+      return result;
+    }, ArraySet::difference);
+  }
+
+  @Test
+  public void test04_symmetricDifference() {
+    test((first, second) -> {
+      TreeSet<Integer> result = new TreeSet<>(first);
+      result.addAll(second);
+      TreeSet<Integer> both = new TreeSet<>(first);
+      both.retainAll(second);
+      result.removeAll(both);
+      return result;
+    }, ArraySet::symmetricDifference);
+  }
+
+  @Test
+  public void test05_views() {
+    ArraySet<Integer> first = new ArraySet<>(Arrays.asList(1, 3, 5, 7, 9, 11));
+    ArraySet<Integer> second = new ArraySet<>(Arrays.asList(2, 3, 4, 5, 6));
+    Assert.assertEquals(Arrays.asList(3, 4, 5, 6, 7),
+      new ArrayList<>(ArraySet.union((ArraySet<Integer>) first.subSet(3, 8), (ArraySet<Integer>) second.tailSet(3))));
+    Assert.assertEquals(Arrays.asList(5, 3),
+      new ArrayList<>(ArraySet.intersect((ArraySet<Integer>) first.descendingSet(),
+        (ArraySet<Integer>) second.descendingSet())));
+  }
+
+  @Test
+  public void test06_equalElementsFromFirst() {
+    Comparator<String> order = String.CASE_INSENSITIVE_ORDER;
+    ArraySet<String> first = new ArraySet<>(Arrays.asList("a", "B", "c"), order);
+    ArraySet<String> second = new ArraySet<>(Arrays.asList("A", "b", "D"), order);
+    Assert.assertEquals(Arrays.asList("a", "B", "c", "D"), new ArrayList<>(ArraySet.union(first, second)));
+    Assert.assertEquals(Arrays.asList("a", "B"), new ArrayList<>(ArraySet.intersect(first, second)));
+    Assert.assertEquals(Arrays.asList("A", "b"), new ArrayList<>(ArraySet.intersect(second, first)));
+    Assert.assertSame(order, ArraySet.union(first, second).comparator());
+  }
+
+  @Test
+  public void test07_naturalOrder() {
+    ArraySet<Integer> implicit = new ArraySet<>(Arrays.asList(1, 2, 3));
+    ArraySet<Integer> explicit = new ArraySet<>(Arrays.asList(2, 3, 4), Comparator.naturalOrder());
+    Assert.assertEquals(Arrays.asList(1, 2, 3, 4), new ArrayList<>(ArraySet.union(implicit, explicit)));
+    Assert.assertEquals(Arrays.asList(2, 3), new ArrayList<>(ArraySet.intersect(explicit, implicit)));
+
+    ArraySet<Integer> reversed = new ArraySet<>(Arrays.asList(0, 2),
+      Collections.reverseOrder(Comparator.<Integer>naturalOrder()));
+    Assert.assertEquals(Arrays.asList(3, 2, 1, 0),
+      new ArrayList<>(ArraySet.union((ArraySet<Integer>) implicit.descendingSet(), reversed)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test08_differentOrders() {
+    ArraySet.union(new ArraySet<>(Arrays.asList(1, 2)),
+      new ArraySet<>(Arrays.asList(1, 2), Comparator.<Integer>reverseOrder()));
+  }
+
+  private static void test(BinaryOperator<NavigableSet<Integer>> expected, BinaryOperator<ArraySet<Integer>> actual) {
+    for (int[] sizes : SIZES) {
+      for (int attempt = 0; attempt < 5; attempt++) {
+        int range = Math.max(1, (sizes[0] + sizes[1]) * (attempt + 1) / 2);
+        List<Integer> first = randomList(sizes[0], range);
+        List<Integer> second = randomList(sizes[1], range);
+        String context = "sizes " + sizes[0] + " and " + sizes[1];
+        Assert.assertEquals(context, new ArrayList<>(expected.apply(new TreeSet<>(first), new TreeSet<>(second))),
+          new ArrayList<>(actual.apply(new ArraySet<>(first), new ArraySet<>(second))));
+
+        Comparator<Integer> reversed = Comparator.reverseOrder();
+        TreeSet<Integer> firstTree = new TreeSet<>(reversed);
+        firstTree.addAll(first);
+        TreeSet<Integer> secondTree = new TreeSet<>(reversed);
+        secondTree.addAll(second);
+        Assert.assertEquals(context + " reversed", new ArrayList<>(expected.apply(firstTree, secondTree)),
+          new ArrayList<>(actual.apply(new ArraySet<>(first, reversed), new ArraySet<>(second, reversed))));
+      }
+    }
+  }
+
+  private static List<Integer> randomList(int size, int range) {
+    List<Integer> result = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      result.add(RANDOM.nextInt(range));
+    }
+    return result;
+  }
+}
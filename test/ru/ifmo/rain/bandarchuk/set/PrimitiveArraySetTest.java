@@ -0,0 +1,182 @@
+package ru.ifmo.rain.bandarchuk.set;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * {@link IntArraySet} and {@link LongArraySet} checked against {@link TreeSet}
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class PrimitiveArraySetTest {
+
+  private static final Random RANDOM = new Random(1298374619827364L);
+
+  @Test
+  public void test01_constructors() {
+    for (int size : new int[]{0, 1, 2, 10, 1000}) {
+      int[] values = randomInts(size, size / 2 + 1);
+      TreeSet<Integer> expected = toTreeSet(values);
+      IntArraySet set = new IntArraySet(values);
+      assertSame(expected, set);
+      assertSame(expected, new IntArraySet(new ArrayList<>(expected)));
+      assertSame(expected, new IntArraySet(set));
+      Assert.assertEquals(expected, set);
+      Assert.assertEquals(expected.hashCode(), set.hashCode());
+    }
+  }
+
+  @Test
+  public void test02_search() {
+    int[] values = randomInts(500, 1000);
+    TreeSet<Integer> expected = toTreeSet(values);
+    IntArraySet set = new IntArraySet(values);
+    for (int probe = -10; probe < 1010; probe++) {
+      assertSearch(expected, set, probe);
+      assertSearch(expected.descendingSet(), set.descendingSet(), probe);
+    }
+  }
+
+  @Test
+  public void test03_views() {
+    int[] values = randomInts(300, 600);
+    TreeSet<Integer> expected = toTreeSet(values);
+    IntArraySet set = new IntArraySet(values);
+    for (int attempt = 0; attempt < 200; attempt++) {
+      int low = RANDOM.nextInt(700) - 50;
+      int high = low + RANDOM.nextInt(700 - low);
+      boolean lowInclusive = RANDOM.nextBoolean();
+      boolean highInclusive = RANDOM.nextBoolean();
+      assertSame(expected.subSet(low, lowInclusive, high, highInclusive),
+        set.subSet(low, lowInclusive, high, highInclusive));
+      assertSame(expected.headSet(high, highInclusive), set.headSet(high, highInclusive));
+      assertSame(expected.tailSet(low, lowInclusive), set.tailSet(low, lowInclusive));
+      assertSame(expected.descendingSet().subSet(high, highInclusive, low, lowInclusive),
+        set.descendingSet().subSet(high, highInclusive, low, lowInclusive));
+      assertSame(expected.descendingSet().headSet(low, lowInclusive), set.descendingSet().headSet(low, lowInclusive));
+    }
+  }
+
+  @Test
+  public void test04_missingElements() {
+    IntArraySet empty = new IntArraySet();
+    assertMissing(empty::firstInt);
+    assertMissing(empty::lastInt);
+    assertMissing(() -> empty.iterator().nextInt());
+
+    IntArraySet set = new IntArraySet(randomInts(100000, Integer.MAX_VALUE));
+    assertMissing(() -> set.ceilingInt(Integer.MAX_VALUE));
+    assertMissing(() -> set.descendingSet().floorInt(Integer.MAX_VALUE));
+    assertMissing(() -> set.tailSet(Integer.MAX_VALUE, false).firstInt());
+    Assert.assertNull(set.higher(Integer.MAX_VALUE));
+  }
+
+  @Test
+  public void test05_immutable() {
+    IntArraySet set = new IntArraySet(1, 2, 3);
+    for (Runnable mutator : Arrays.<Runnable>asList(() -> set.add(4), () -> set.remove(1), set::clear,
+      set::pollFirst, set::pollLast)) {
+      try {
+        mutator.run();
+        Assert.fail("Set should be immutable");
+      } catch (UnsupportedOperationException ignored) {
+      }
+    }
+    Assert.assertEquals(Arrays.asList(1, 2, 3), new ArrayList<>(set));
+  }
+
+  @Test
+  public void test06_longs() {
+    long[] values = new long[1000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = RANDOM.nextLong() >> RANDOM.nextInt(64);
+    }
+    TreeSet<Long> expected = new TreeSet<>();
+    for (long value : values) {
+      expected.add(value);
+    }
+    LongArraySet set = new LongArraySet(values);
+    Assert.assertEquals(new ArrayList<>(expected), new ArrayList<>(set));
+    Assert.assertEquals(new ArrayList<>(expected.descendingSet()), new ArrayList<>(set.descendingSet()));
+    Assert.assertEquals(expected.hashCode(), set.hashCode());
+    for (long value : values) {
+      for (long probe : new long[]{value - 1, value, value + 1}) {
+        Assert.assertTrue(set.containsLong(value));
+        Assert.assertEquals(expected.ceiling(probe), set.ceiling(probe));
+        Assert.assertEquals(expected.floor(probe), set.floor(probe));
+        Assert.assertEquals(expected.higher(probe), set.higher(probe));
+        Assert.assertEquals(expected.lower(probe), set.lower(probe));
+      }
+    }
+    Assert.assertEquals(expected.first().longValue(), set.firstLong());
+    Assert.assertEquals(expected.last().longValue(), set.lastLong());
+    assertMissing(() -> set.ceilingLong(Long.MAX_VALUE));
+    assertMissing(() -> new LongArraySet().firstLong());
+  }
+
+  private static void assertSearch(NavigableSet<Integer> expected, IntArraySet set, int probe) {
+    String context = "probe " + probe;
+    Assert.assertEquals(context, expected.contains(probe), set.containsInt(probe));
+    Assert.assertEquals(context, expected.ceiling(probe), set.ceiling(probe));
+    Assert.assertEquals(context, expected.floor(probe), set.floor(probe));
+    Assert.assertEquals(context, expected.higher(probe), set.higher(probe));
+    Assert.assertEquals(context, expected.lower(probe), set.lower(probe));
+    if (expected.ceiling(probe) != null) {
+      Assert.assertEquals(context, expected.ceiling(probe).intValue(), set.ceilingInt(probe));
+    }
+    if (expected.floor(probe) != null) {
+      Assert.assertEquals(context, expected.floor(probe).intValue(), set.floorInt(probe));
+    }
+  }
+
+  private static void assertSame(NavigableSet<Integer> expected, IntArraySet set) {
+    Assert.assertEquals(new ArrayList<>(expected), new ArrayList<>(set));
+    Assert.assertEquals(expected.size(), set.size());
+    if (!expected.isEmpty()) {
+      Assert.assertEquals(expected.first().intValue(), set.firstInt());
+      Assert.assertEquals(expected.last().intValue(), set.lastInt());
+    }
+    Iterator<Integer> descending = set.descendingIterator();
+    for (Integer value : expected.descendingSet()) {
+      Assert.assertEquals(value, descending.next());
+    }
+    Assert.assertFalse(descending.hasNext());
+  }
+
+  /**
+   * Checks that the lookup fails and that the message does not grow with the set
+   */
+  private static void assertMissing(Runnable lookup) {
+    try {
+      lookup.run();
+      Assert.fail("Expected NoSuchElementException");
+    } catch (NoSuchElementException e) {
+      Assert.assertTrue(e.getMessage(), e.getMessage() == null || e.getMessage().length() < 100);
+    }
+  }
+
+  private static int[] randomInts(int size, int range) {
+    int[] values = new int[size];
+    for (int i = 0; i < size; i++) {
+      values[i] = RANDOM.nextInt(range);
+    }
+    return values;
+  }
+
+  private static TreeSet<Integer> toTreeSet(int[] values) {
+    TreeSet<Integer> result = new TreeSet<>();
+    for (int value : values) {
+      result.add(value);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,73 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runners.MethodSorters;
+import ru.ifmo.rain.bandarchuk.walk.exceptions.RecursiveWalkException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Walks into zip archives, intact and corrupted
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ArchivesTest {
+
+    private static final int ENTRIES = 10;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void test01_entries() throws IOException, RecursiveWalkException {
+      final Path archive = zip("archive.zip");
+      final List<String> plain = walk(archive, 0);
+      final List<String> expanded = walk(archive, 1);
+      Assert.assertEquals(1, plain.size());
+      Assert.assertEquals(ENTRIES + 1, expanded.size());
+      Assert.assertEquals(plain.get(0), expanded.get(0));
+    }
+
+    @Test
+    public void test02_truncated() throws IOException, RecursiveWalkException {
+      final Path archive = zip("archive.zip");
+      final byte[] bytes = Files.readAllBytes(archive);
+      Files.write(archive, Arrays.copyOf(bytes, bytes.length / 2));
+      Assert.assertNull(Archives.open(archive));
+
+      // the truncated archive is hashed as a plain file, without entries
+      Assert.assertEquals(walk(archive, 0), walk(archive, 1));
+      Assert.assertEquals(1, walk(archive, 1).size());
+    }
+
+    private Path zip(final String name) throws IOException {
+      final Path archive = folder.getRoot().toPath().resolve(name);
+      try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(archive))) {
+        for (int i = 0; i < ENTRIES; i++) {
+          out.putNextEntry(new ZipEntry("entry" + i));
+          out.write(("contents of entry " + i).getBytes(StandardCharsets.UTF_8));
+          out.closeEntry();
+        }
+      }
+      return archive;
+    }
+
+    private List<String> walk(final Path archive, final int depth) throws IOException, RecursiveWalkException {
+      final Path input = folder.getRoot().toPath().resolve("input");
+      final Path output = folder.getRoot().toPath().resolve("output");
+      Files.write(input, Collections.singletonList(archive.toString()), StandardCharsets.UTF_8);
+      new RecursiveWalk(input.toString(), output.toString()).setArchiveDepth(depth).walk();
+      return Files.readAllLines(output, StandardCharsets.UTF_8);
+    }
+}
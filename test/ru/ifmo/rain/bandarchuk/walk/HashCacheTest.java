@@ -0,0 +1,187 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.FixMethodOrder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runners.MethodSorters;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Round trips of {@link HashCache}: hits, misses and rejected cache files
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class HashCacheTest {
+
+    private static final HashFunction FUNCTION = HashFunctions.forName("fnv64");
+
+    /**
+     * Modification time of written files, old enough for them to be cached
+     */
+    private static final FileTime MODIFIED = FileTime.fromMillis(System.currentTimeMillis() - 3_600_000);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void test01_missingCache() throws IOException {
+      final Path cacheFile = folder.getRoot().toPath().resolve("cache");
+      final Path file = write("file", "contents");
+      final HashCache cache = HashCache.open(cacheFile, FUNCTION);
+      Assert.assertArrayEquals(FUNCTION.hash(file), hash(cache, file));
+      cache.save();
+      Assert.assertTrue(Files.isRegularFile(cacheFile));
+    }
+
+    @Test
+    public void test02_hit() throws IOException {
+      final Path cacheFile = folder.getRoot().toPath().resolve("cache");
+      final Path file = write("file", "contents");
+      final byte[] expected = FUNCTION.hash(file);
+      save(cacheFile, file);
+
+      // same size and modification time: the stale digest proves the file was not read
+      rewriteInPlace(file, "CONTENTS");
+      Assert.assertArrayEquals(expected, hash(HashCache.open(cacheFile, FUNCTION), file));
+    }
+
+    @Test
+    public void test03_modified() throws IOException {
+      final Path cacheFile = folder.getRoot().toPath().resolve("cache");
+      final Path file = write("file", "contents");
+      save(cacheFile, file);
+
+      Files.write(file, "changed contents".getBytes(StandardCharsets.UTF_8));
+      Files.setLastModifiedTime(file, MODIFIED);
+      Assert.assertArrayEquals(FUNCTION.hash(file), hash(HashCache.open(cacheFile, FUNCTION), file));
+    }
+
+    @Test
+    public void test04_replaced() throws IOException {
+      Assume.assumeTrue(folder.getRoot().toPath().getFileSystem().supportedFileAttributeViews().contains("unix"));
+      final Path cacheFile = folder.getRoot().toPath().resolve("cache");
+      final Path file = write("file", "contents");
+      final FileTime modified = Files.getLastModifiedTime(file);
+      save(cacheFile, file);
+
+      // another inode with the same size and modification time
+      final Path replacement = write("replacement", "CONTENTS");
+      Files.setLastModifiedTime(replacement, modified);
+      Files.move(replacement, file, StandardCopyOption.REPLACE_EXISTING);
+      Assert.assertArrayEquals(FUNCTION.hash(file), hash(HashCache.open(cacheFile, FUNCTION), file));
+    }
+
+    @Test
+    public void test05_staleEntriesDropped() throws IOException {
+      final Path cacheFile = folder.getRoot().toPath().resolve("cache");
+      final Path first = write("first", "first");
+      final Path second = write("second", "second");
+      save(cacheFile, first, second);
+      save(cacheFile, first);
+
+      rewriteInPlace(second, "SECOND");
+      Assert.assertArrayEquals(FUNCTION.hash(second), hash(HashCache.open(cacheFile, FUNCTION), second));
+    }
+
+    @Test
+    public void test06_manyFiles() throws IOException {
+      final Path cacheFile = folder.getRoot().toPath().resolve("cache");
+      final Path dir = folder.newFolder().toPath();
+      final List<Path> files = new ArrayList<>();
+      final List<byte[]> expected = new ArrayList<>();
+      for (int i = 0; i < 3000; i++) {
+        final Path file = dir.resolve("file-" + (i * 7919 % 3000));
+        Files.write(file, ("contents " + i).getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, MODIFIED);
+        files.add(file);
+        expected.add(FUNCTION.hash(file));
+      }
+      save(cacheFile, files.toArray(new Path[0]));
+
+      for (Path file : files) {
+        rewriteInPlace(file, new String(Files.readAllBytes(file), StandardCharsets.UTF_8).toUpperCase());
+      }
+      final HashCache cache = HashCache.open(cacheFile, FUNCTION);
+      for (int i = 0; i < files.size(); i++) {
+        Assert.assertArrayEquals(files.get(i).toString(), expected.get(i), hash(cache, files.get(i)));
+      }
+    }
+
+    @Test
+    public void test07_otherFunction() throws IOException {
+      final Path cacheFile = folder.getRoot().toPath().resolve("cache");
+      save(cacheFile, write("file", "contents"));
+      assertRejected(cacheFile, HashFunctions.forName("fnv32"));
+      assertRejected(cacheFile, HashFunctions.forName("xxhash64"));
+    }
+
+    @Test
+    public void test08_corrupted() throws IOException {
+      final Path cacheFile = folder.getRoot().toPath().resolve("cache");
+      Files.write(cacheFile, "not a hash cache".getBytes(StandardCharsets.UTF_8));
+      assertRejected(cacheFile, FUNCTION);
+
+      final Path truncated = folder.getRoot().toPath().resolve("truncated");
+      save(truncated, write("file", "contents"));
+      final byte[] bytes = Files.readAllBytes(truncated);
+      Files.write(truncated, Arrays.copyOf(bytes, bytes.length / 2));
+      assertRejected(truncated, FUNCTION);
+    }
+
+    @Test
+    public void test09_recentlyModified() throws IOException {
+      final Path cacheFile = folder.getRoot().toPath().resolve("cache");
+      final Path file = folder.getRoot().toPath().resolve("recent");
+      Files.write(file, "contents".getBytes(StandardCharsets.UTF_8));
+      save(cacheFile, file);
+
+      // could have been rewritten within the tick of its modification time, so it is not cached
+      rewriteInPlace(file, "CONTENTS");
+      Assert.assertArrayEquals(FUNCTION.hash(file), hash(HashCache.open(cacheFile, FUNCTION), file));
+    }
+
+    private Path write(final String name, final String contents) throws IOException {
+      final Path file = folder.getRoot().toPath().resolve(name);
+      Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+      Files.setLastModifiedTime(file, MODIFIED);
+      return file;
+    }
+
+    private static void rewriteInPlace(final Path file, final String contents) throws IOException {
+      final FileTime modified = Files.getLastModifiedTime(file);
+      Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+      Files.setLastModifiedTime(file, modified);
+    }
+
+    private static byte[] hash(final HashCache cache, final Path file) throws IOException {
+      return cache.hash(file, Files.readAttributes(file, BasicFileAttributes.class));
+    }
+
+    private static void save(final Path cacheFile, final Path... files) throws IOException {
+      final HashCache cache = HashCache.open(cacheFile, FUNCTION);
+      for (Path file : files) {
+        hash(cache, file);
+      }
+      cache.save();
+    }
+
+    private static void assertRejected(final Path cacheFile, final HashFunction function) {
+      try {
+        HashCache.open(cacheFile, function);
+        Assert.fail("Cache " + cacheFile + " should be rejected for " + function.getName());
+      } catch (IOException ignored) {
+      }
+    }
+}
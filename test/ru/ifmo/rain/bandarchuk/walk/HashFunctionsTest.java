@@ -0,0 +1,138 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runners.MethodSorters;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Published test vectors of the hash functions and consistency of their streaming updates
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class HashFunctionsTest {
+
+    private static final Random RANDOM = new Random(3418734587351L);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void test01_fnv32() {
+      check("fnv32", "", "811c9dc5");
+      check("fnv32", "a", "050c5d7e");
+    }
+
+    @Test
+    public void test02_fnv64() {
+      check("fnv64", "", "cbf29ce484222325");
+      check("fnv64", "a", "af63dc4c8601ec8c");
+      check("fnv64", "123456789", "06d5573923c6cdfc");
+    }
+
+    @Test
+    public void test03_crc32c() {
+      check("crc32c", "", "00000000");
+      check("crc32c", "123456789", "e3069283");
+    }
+
+    @Test
+    public void test04_xxhash64() {
+      check("xxhash64", "", "ef46db3751d8e999");
+      check("xxhash64", "a", "d24ec4f1a98c6e5b");
+      check("xxhash64", "abc", "44bc2cf5ad770999");
+    }
+
+    @Test
+    public void test05_sha256() {
+      check("sha256", "", "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855");
+      check("sha256", "abc", "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad");
+    }
+
+    @Test
+    public void test06_lengths() {
+      for (HashFunction function : HashFunctions.getAll()) {
+        Assert.assertEquals(function.getName(), function.getLength(), digest(function, new byte[0]).length);
+        Assert.assertArrayEquals(function.getName(), new byte[function.getLength()], function.getEmptyHash());
+      }
+    }
+
+    @Test
+    public void test07_splitUpdates() {
+      for (HashFunction function : HashFunctions.getAll()) {
+        for (int length : new int[]{1, 7, 31, 32, 33, 64, 100, 1000, 4097}) {
+          final byte[] data = randomBytes(length);
+          final byte[] expected = digest(function, data);
+          for (int attempt = 0; attempt < 10; attempt++) {
+            final Hasher hasher = function.newHasher();
+            int position = 0;
+            while (position < length) {
+              final int next = position + RANDOM.nextInt(length - position) + 1;
+              hasher.update(ByteBuffer.wrap(data, position, next - position));
+              position = next;
+            }
+            Assert.assertArrayEquals(function.getName() + " of " + length + " bytes", expected, hasher.digest());
+          }
+        }
+      }
+    }
+
+    @Test
+    public void test08_files() throws IOException {
+      for (int length : new int[]{0, 1, 4096, 1 << 20}) {
+        final byte[] data = randomBytes(length);
+        final Path file = folder.newFile().toPath();
+        Files.write(file, data);
+        for (HashFunction function : HashFunctions.getAll()) {
+          Assert.assertArrayEquals(function.getName() + " of " + length + " bytes",
+            digest(function, data), function.hash(file));
+        }
+      }
+    }
+
+    @Test
+    public void test09_missingFile() {
+      final Path file = folder.getRoot().toPath().resolve("missing");
+      for (HashFunction function : HashFunctions.getAll()) {
+        Assert.assertArrayEquals(function.getName(), function.getEmptyHash(), function.hash(file));
+      }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test10_unknownFunction() {
+      HashFunctions.forName("md5");
+    }
+
+    private static void check(final String name, final String input, final String expected) {
+      final byte[] digest = digest(HashFunctions.forName(name), input.getBytes(StandardCharsets.US_ASCII));
+      Assert.assertEquals(name + " of '" + input + "'", expected, toHex(digest));
+    }
+
+    private static byte[] digest(final HashFunction function, final byte[] data) {
+      final Hasher hasher = function.newHasher();
+      hasher.update(ByteBuffer.wrap(data));
+      return hasher.digest();
+    }
+
+    private static byte[] randomBytes(final int length) {
+      final byte[] bytes = new byte[length];
+      RANDOM.nextBytes(bytes);
+      return bytes;
+    }
+
+    private static String toHex(final byte[] bytes) {
+      final StringBuilder result = new StringBuilder();
+      for (byte b : bytes) {
+        result.append(String.format("%02x", b));
+      }
+      return result.toString();
+    }
+}
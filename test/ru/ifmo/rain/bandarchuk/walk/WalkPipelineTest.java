@@ -0,0 +1,212 @@
+package ru.ifmo.rain.bandarchuk.walk;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runners.MethodSorters;
+import ru.ifmo.rain.bandarchuk.walk.exceptions.RecursiveWalkException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Output of {@link WalkPipeline} compared with a walk hashing every file in turn on the calling thread
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class WalkPipelineTest {
+
+    private static final Random RANDOM = new Random(3498275938475938L);
+    private static final HashFunction FUNCTION = HashFunctions.forName("fnv64");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void test01_order() throws IOException, RecursiveWalkException {
+      final List<String> input = createInput();
+      final List<String> expected = flatten(walkSequentially(input, WalkFilter.ALL));
+      for (int threads : new int[]{1, 2, 16}) {
+        Assert.assertEquals("threads " + threads, expected, walk(input, walker().setThreads(threads)));
+      }
+      Assert.assertEquals("thread per file", expected, walk(input, walker().setThreadPerFileLimit(4)));
+    }
+
+    @Test
+    public void test02_failures() throws IOException, RecursiveWalkException {
+      final Path root = createTree("tree", 20);
+      final List<String> input = Arrays.asList(
+        root.resolve("missing").toString(), "invalid\u0000path", root.toString(), root.resolve("missing").toString());
+      final List<String> actual = walk(input, walker().setThreads(4));
+      Assert.assertEquals(flatten(walkSequentially(input, WalkFilter.ALL)), actual);
+
+      final String empty = toHex(FUNCTION.getEmptyHash());
+      Assert.assertEquals(empty + " " + root.resolve("missing"), actual.get(0));
+      Assert.assertEquals(empty + " invalid\u0000path", actual.get(1));
+    }
+
+    @Test
+    public void test03_filtered() throws IOException, RecursiveWalkException {
+      final List<String> input = createInput();
+      final WalkFilter filter = WalkFilter.compile(Arrays.asList("*.txt", "*.bin"), Arrays.asList("d1", "*.tmp"));
+      final List<String> expected = flatten(walkSequentially(input, filter));
+      Assert.assertNotEquals(flatten(walkSequentially(input, WalkFilter.ALL)), expected);
+      Assert.assertEquals(expected, walk(input, walker().setThreads(8).setFilter(filter)));
+    }
+
+    @Test
+    public void test04_checkpoints() throws IOException, RecursiveWalkException {
+      final List<String> input = createInput();
+      final Path journal = folder.getRoot().toPath().resolve("journal");
+      Assert.assertEquals(flatten(walkSequentially(input, WalkFilter.ALL)),
+        walk(input, walker().setThreads(8).setCheckpoint(journal, 0)));
+    }
+
+    @Test
+    public void test05_resume() throws IOException, RecursiveWalkException {
+      final List<String> input = createInput();
+      final List<List<String>> lines = walkSequentially(input, WalkFilter.ALL);
+      final List<String> expected = flatten(lines);
+      final Path journal = folder.getRoot().toPath().resolve("journal");
+      final Path output = folder.getRoot().toPath().resolve("output");
+      for (int attempt = 0; attempt < 10; attempt++) {
+        final int line = RANDOM.nextInt(lines.size());
+        final int entries = RANDOM.nextInt(lines.get(line).size() + 1);
+
+        // output of an interrupted walk: complete entries before the checkpoint and a torn line after it
+        final List<String> written = new ArrayList<>();
+        for (int i = 0; i < line; i++) {
+          written.addAll(lines.get(i));
+        }
+        written.addAll(lines.get(line).subList(0, entries));
+        final StringBuilder contents = new StringBuilder();
+        for (String entry : written) {
+          contents.append(entry).append(System.lineSeparator());
+        }
+        final byte[] bytes = contents.toString().getBytes(StandardCharsets.UTF_8);
+        Files.write(output, (contents + "0123 torn").getBytes(StandardCharsets.UTF_8));
+        new WalkCheckpoint(line, entries, bytes.length).write(journal);
+
+        final String context = "line " + line + ", entries " + entries;
+        Assert.assertEquals(context, expected,
+          walk(input, walker().setThreads(4).setCheckpoint(journal, 0).setResume(true)));
+      }
+    }
+
+    private RecursiveWalk walker() throws IOException, RecursiveWalkException {
+      final Path input = folder.getRoot().toPath().resolve("input");
+      final Path output = folder.getRoot().toPath().resolve("output");
+      if (Files.notExists(input)) {
+        Files.createFile(input);
+      }
+      return new RecursiveWalk(input.toString(), output.toString()).setHashFunction(FUNCTION);
+    }
+
+    private List<String> walk(final List<String> input, final RecursiveWalk walker)
+      throws IOException, RecursiveWalkException {
+      Files.write(folder.getRoot().toPath().resolve("input"), input, StandardCharsets.UTF_8);
+      walker.walk();
+      return Files.readAllLines(folder.getRoot().toPath().resolve("output"), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return lines of the input: trees, single files and missing files
+     */
+    private List<String> createInput() throws IOException {
+      final Path first = createTree("first", 200);
+      final Path second = createTree("second", 50);
+      return Arrays.asList(first.toString(), second.resolve("d0").toString(), first.resolve("missing").toString(),
+        second.toString(), first.toString());
+    }
+
+    private Path createTree(final String name, final int files) throws IOException {
+      final Path root = folder.getRoot().toPath().resolve(name);
+      final String[] extensions = {".txt", ".bin", ".tmp", ""};
+      for (int i = 0; i < files; i++) {
+        final Path dir = root.resolve("d" + RANDOM.nextInt(4)).resolve("d" + RANDOM.nextInt(3));
+        Files.createDirectories(dir);
+        final byte[] contents = new byte[RANDOM.nextInt(3) == 0 ? RANDOM.nextInt(200_000) : RANDOM.nextInt(100)];
+        RANDOM.nextBytes(contents);
+        Files.write(dir.resolve("f" + i + extensions[RANDOM.nextInt(extensions.length)]), contents);
+      }
+      Files.createDirectories(root.resolve("empty"));
+      try {
+        Files.createSymbolicLink(root.resolve("dangling"), root.resolve("nowhere"));
+      } catch (UnsupportedOperationException | IOException ignored) {
+      }
+      return root;
+    }
+
+    /**
+     * @return entries of every input line, hashed one by one in the order of {@link Files#walkFileTree}
+     */
+    private static List<List<String>> walkSequentially(final List<String> input, final WalkFilter filter)
+      throws IOException {
+      final String empty = toHex(FUNCTION.getEmptyHash());
+      final List<List<String>> result = new ArrayList<>();
+      for (String line : input) {
+        final List<String> entries = new ArrayList<>();
+        result.add(entries);
+        final Path root;
+        try {
+          root = Paths.get(line);
+        } catch (InvalidPathException e) {
+          entries.add(empty + " " + line);
+          continue;
+        }
+        if (!Files.isDirectory(root)) {
+          entries.add(toHex(FUNCTION.hash(root)) + " " + root);
+          continue;
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+            return filter.isExcluded(root, dir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+            if (filter.acceptsFile(root, file)) {
+              entries.add(toHex(FUNCTION.hash(file)) + " " + file);
+            }
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFileFailed(final Path file, final IOException exc) {
+            if (filter.acceptsFile(root, file)) {
+              entries.add(empty + " " + file);
+            }
+            return FileVisitResult.CONTINUE;
+          }
+        });
+      }
+      return result;
+    }
+
+    private static List<String> flatten(final List<List<String>> lines) {
+      final List<String> result = new ArrayList<>();
+      lines.forEach(result::addAll);
+      return result;
+    }
+
+    private static String toHex(final byte[] hash) {
+      final StringBuilder result = new StringBuilder();
+      for (byte b : hash) {
+        result.append(String.format("%02x", b & 0xff));
+      }
+      return result.toString();
+    }
+}
@@ -0,0 +1,166 @@
+package ru.ifmo.rain.bandarchuk.walk.snapshot;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runners.MethodSorters;
+import ru.ifmo.rain.bandarchuk.walk.ResultWriter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Differences between text manifests and snapshots found by {@link ManifestDiff}
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ManifestDiffTest {
+
+    private static final Random RANDOM = new Random(9128374619283746L);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void test01_equal() throws IOException {
+      final Path manifest = manifest("00000001 /a", "00000002 /b");
+      Assert.assertEquals(Collections.emptyList(), diff(manifest, manifest, 0, 0, 0));
+    }
+
+    @Test
+    public void test02_changes() throws IOException {
+      final Path before = manifest("00000001 /a", "00000002 /b", "00000003 /c", "00000004 /d");
+      final Path after = manifest("00000001 /a", "00000005 /b", "00000006 /bb", "00000004 /d", "00000007 /e");
+      Assert.assertEquals(
+        Arrays.asList("*00000005 /b", "+00000006 /bb", "-00000003 /c", "+00000007 /e"),
+        diff(before, after, 2, 1, 1));
+    }
+
+    @Test
+    public void test03_empty() throws IOException {
+      final Path empty = manifest();
+      final Path manifest = manifest("00000001 /a", "00000002 /b");
+      Assert.assertEquals(Arrays.asList("+00000001 /a", "+00000002 /b"), diff(empty, manifest, 2, 0, 0));
+      Assert.assertEquals(Arrays.asList("-00000001 /a", "-00000002 /b"), diff(manifest, empty, 0, 2, 0));
+    }
+
+    @Test
+    public void test04_repeatedPaths() throws IOException {
+      final Path before = manifest("00000001 /a", "00000009 /a", "00000002 /b");
+      final Path after = manifest("00000001 /a", "00000002 /b", "00000008 /b");
+      Assert.assertEquals(Collections.emptyList(), diff(before, after, 0, 0, 0));
+    }
+
+    @Test
+    public void test05_byteOrder() throws IOException {
+      // 'Z' < 'a' < Cyrillic 'ya' in UTF-8 bytes
+      final Path before = manifest("00000001 /Z", "00000002 /a", "00000003 /\u044f");
+      final Path after = manifest("00000001 /Z", "00000003 /\u044f");
+      Assert.assertEquals(Collections.singletonList("-00000002 /a"), diff(before, after, 0, 1, 0));
+    }
+
+    @Test
+    public void test06_snapshots() throws IOException {
+      final TreeMap<String, String> before = new TreeMap<>();
+      final TreeMap<String, String> after = new TreeMap<>();
+      for (int i = 0; i < 3000; i++) {
+        final String path = String.format("/dir%d/file%05d", i % 7, i);
+        final String hash = String.format("%08x", RANDOM.nextInt());
+        switch (RANDOM.nextInt(4)) {
+          case 0:
+            before.put(path, hash);
+            break;
+          case 1:
+            after.put(path, hash);
+            break;
+          case 2:
+            before.put(path, hash);
+            after.put(path, String.format("%08x", RANDOM.nextInt()));
+            break;
+          default:
+            before.put(path, hash);
+            after.put(path, hash);
+        }
+      }
+      final TreeSet<String> paths = new TreeSet<>(before.keySet());
+      paths.addAll(after.keySet());
+      final List<String> expected = new ArrayList<>();
+      for (String path : paths) {
+        final String oldHash = before.get(path);
+        final String newHash = after.get(path);
+        if (oldHash == null) {
+          expected.add("+" + newHash + " " + path);
+        } else if (newHash == null) {
+          expected.add("-" + oldHash + " " + path);
+        } else if (!oldHash.equals(newHash)) {
+          expected.add("*" + newHash + " " + path);
+        }
+      }
+
+      final Path oldManifest = manifest(before);
+      final Path newManifest = manifest(after);
+      final Path oldSnapshot = folder.newFile().toPath();
+      final Path newSnapshot = folder.newFile().toPath();
+      SnapshotWriter.convert(oldManifest, oldSnapshot);
+      SnapshotWriter.convert(newManifest, newSnapshot);
+
+      Assert.assertEquals(expected, diff(oldManifest, newManifest));
+      Assert.assertEquals(expected, diff(oldSnapshot, newSnapshot));
+      Assert.assertEquals(expected, diff(oldSnapshot, newManifest));
+      Assert.assertEquals(expected, diff(oldManifest, newSnapshot));
+    }
+
+    @Test(expected = IOException.class)
+    public void test07_unsorted() throws IOException {
+      diff(manifest("00000001 /b", "00000002 /a"), manifest("00000001 /a"));
+    }
+
+    @Test(expected = IOException.class)
+    public void test08_differentLengths() throws IOException {
+      diff(manifest("00000001 /a"), manifest("0000000000000001 /a"));
+    }
+
+    private Path manifest(final String... lines) throws IOException {
+      final Path manifest = folder.newFile().toPath();
+      Files.write(manifest, Arrays.asList(lines), StandardCharsets.UTF_8);
+      return manifest;
+    }
+
+    private Path manifest(final TreeMap<String, String> entries) throws IOException {
+      final List<String> lines = new ArrayList<>();
+      entries.forEach((path, hash) -> lines.add(hash + " " + path));
+      return manifest(lines.toArray(new String[0]));
+    }
+
+    private List<String> diff(final Path before, final Path after,
+                              final long added, final long removed, final long changed) throws IOException {
+      final Path output = folder.newFile().toPath();
+      final ManifestDiff diff;
+      try (ResultWriter resultWriter = new ResultWriter(output)) {
+        diff = new ManifestDiff(resultWriter);
+        diff.diff(before, after);
+      }
+      Assert.assertEquals("added", added, diff.getAdded());
+      Assert.assertEquals("removed", removed, diff.getRemoved());
+      Assert.assertEquals("changed", changed, diff.getChanged());
+      return Files.readAllLines(output, StandardCharsets.UTF_8);
+    }
+
+    private List<String> diff(final Path before, final Path after) throws IOException {
+      final Path output = folder.newFile().toPath();
+      try (ResultWriter resultWriter = new ResultWriter(output)) {
+        new ManifestDiff(resultWriter).diff(before, after);
+      }
+      return Files.readAllLines(output, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,137 @@
+package ru.ifmo.rain.bandarchuk.walk.snapshot;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runners.MethodSorters;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Sorting in memory and through spilled runs with {@link RecordSorter}
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class RecordSorterTest {
+
+    private static final Random RANDOM = new Random(8745098237450982L);
+
+    /**
+     * Orders records by their first byte only, so the order of equal records shows stability
+     */
+    private static final Comparator<byte[]> FIRST_BYTE = Comparator.comparingInt(record -> record[0]);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void test01_empty() throws IOException {
+      try (RecordSorter sorter = new RecordSorter(FIRST_BYTE, folder.getRoot().toPath(), 1)) {
+        Assert.assertEquals(0, sort(sorter).size());
+      }
+    }
+
+    @Test
+    public void test02_inMemory() throws IOException {
+      test(1000, RecordSorter.DEFAULT_BUDGET);
+      Assert.assertEquals(0, runFiles().length);
+    }
+
+    @Test
+    public void test03_spilled() throws IOException {
+      for (long budget : new long[]{1, 100, 1000, 10000}) {
+        test(1000, budget);
+        Assert.assertEquals(0, runFiles().length);
+      }
+    }
+
+    @Test
+    public void test04_concurrentAdds() throws IOException, InterruptedException {
+      final int threads = 8;
+      final int perThread = 5000;
+      final List<IOException> failures = Collections.synchronizedList(new ArrayList<>());
+      try (RecordSorter sorter = new RecordSorter(FIRST_BYTE, folder.getRoot().toPath(), 1000)) {
+        final List<Thread> workers = new ArrayList<>();
+        for (int thread = 0; thread < threads; thread++) {
+          final int id = thread;
+          workers.add(new Thread(() -> {
+            for (int i = 0; i < perThread; i++) {
+              try {
+                sorter.add(new byte[]{(byte) (i % 16), (byte) id, (byte) (i >> 8), (byte) i});
+              } catch (IOException e) {
+                failures.add(e);
+              }
+            }
+          }));
+        }
+        workers.forEach(Thread::start);
+        for (Thread worker : workers) {
+          worker.join();
+        }
+        Assert.assertEquals(Collections.emptyList(), failures);
+
+        final List<byte[]> sorted = sort(sorter);
+        Assert.assertEquals(threads * perThread, sorted.size());
+        final int[] previous = new int[threads];
+        Arrays.fill(previous, -1);
+        for (int i = 0; i < sorted.size(); i++) {
+          final byte[] record = sorted.get(i);
+          Assert.assertTrue(i == 0 || sorted.get(i - 1)[0] <= record[0]);
+          // records of one thread with equal keys keep the order they were added in
+          final int number = (record[2] & 0xff) << 8 | record[3] & 0xff;
+          if (i > 0 && sorted.get(i - 1)[0] != record[0]) {
+            Arrays.fill(previous, -1);
+          }
+          Assert.assertTrue(previous[record[1]] < number);
+          previous[record[1]] = number;
+        }
+      }
+      Assert.assertEquals(0, runFiles().length);
+    }
+
+    private void test(final int count, final long budget) throws IOException {
+      final List<byte[]> records = new ArrayList<>();
+      for (int i = 0; i < count; i++) {
+        // the first byte is the key, the rest is the number of the record
+        records.add(new byte[]{(byte) RANDOM.nextInt(16), (byte) (i >> 8), (byte) i});
+      }
+      final List<byte[]> expected = new ArrayList<>(records);
+      expected.sort(FIRST_BYTE);
+
+      final Path directory = folder.getRoot().toPath();
+      try (RecordSorter sorter = new RecordSorter(FIRST_BYTE, directory, budget)) {
+        for (byte[] record : records) {
+          sorter.add(record);
+        }
+        final List<byte[]> actual = sort(sorter);
+        Assert.assertEquals("budget " + budget, expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+          Assert.assertArrayEquals("budget " + budget + ", record " + i, expected.get(i), actual.get(i));
+        }
+      }
+    }
+
+    private static List<byte[]> sort(final RecordSorter sorter) throws IOException {
+      final List<byte[]> result = new ArrayList<>();
+      try (RecordSorter.Cursor cursor = sorter.sorted()) {
+        byte[] record;
+        while ((record = cursor.next()) != null) {
+          result.add(record);
+        }
+      }
+      return result;
+    }
+
+    private File[] runFiles() {
+      return folder.getRoot().listFiles((dir, name) -> name.endsWith(".run"));
+    }
+}
@@ -0,0 +1,182 @@
+package ru.ifmo.rain.bandarchuk.walk.snapshot;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runners.MethodSorters;
+import ru.ifmo.rain.bandarchuk.walk.ResultWriter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Snapshots written by {@link SnapshotWriter} and read back by {@link SnapshotReader}
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class SnapshotTest {
+
+    private static final Random RANDOM = new Random(2389475623984756L);
+    private static final int HASH_LENGTH = 8;
+    private static final String[] PARTS = {"a", "b", "dir", "\u0444\u0430\u0439\u043b", "\u65e5\u672c", "x y", "."};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void test01_empty() throws IOException {
+      final Path snapshot = folder.getRoot().toPath().resolve("snapshot");
+      new SnapshotWriter(HASH_LENGTH).write(snapshot);
+      final SnapshotReader reader = SnapshotReader.open(snapshot);
+      Assert.assertEquals(0, reader.size());
+      Assert.assertEquals(HASH_LENGTH, reader.getHashLength());
+      Assert.assertNull(reader.getHash("a"));
+      Assert.assertEquals(Collections.emptyList(), reader.getPaths(new byte[HASH_LENGTH]));
+    }
+
+    @Test
+    public void test02_single() throws IOException {
+      final Map<String, byte[]> entries = new LinkedHashMap<>();
+      entries.put("/only/file", randomHash(1000));
+      test(entries, RecordSorter.DEFAULT_BUDGET);
+    }
+
+    @Test
+    public void test03_blocks() throws IOException {
+      for (int count : new int[]{SnapshotWriter.BLOCK_SIZE - 1, SnapshotWriter.BLOCK_SIZE,
+        SnapshotWriter.BLOCK_SIZE + 1, 10 * SnapshotWriter.BLOCK_SIZE}) {
+        test(randomEntries(count), RecordSorter.DEFAULT_BUDGET);
+      }
+    }
+
+    @Test
+    public void test04_spilled() throws IOException {
+      final Map<String, byte[]> entries = randomEntries(5000);
+      final Path inMemory = test(entries, RecordSorter.DEFAULT_BUDGET);
+      final Path spilled = test(entries, 1000);
+      Assert.assertArrayEquals(Files.readAllBytes(inMemory), Files.readAllBytes(spilled));
+    }
+
+    @Test
+    public void test05_duplicatePaths() throws IOException {
+      final Path snapshot = folder.getRoot().toPath().resolve("snapshot");
+      final byte[] first = randomHash(1000);
+      final SnapshotWriter writer = new SnapshotWriter(HASH_LENGTH, folder.getRoot().toPath(), 100);
+      writer.add("b", randomHash(1000));
+      writer.add("a", first);
+      for (int i = 0; i < 100; i++) {
+        writer.add("a", randomHash(1000));
+      }
+      writer.write(snapshot);
+
+      final SnapshotReader reader = SnapshotReader.open(snapshot);
+      Assert.assertEquals(2, reader.size());
+      Assert.assertArrayEquals(first, reader.getHash("a"));
+    }
+
+    @Test
+    public void test06_convert() throws IOException {
+      final Map<String, byte[]> entries = randomEntries(1000);
+      final Path manifest = folder.getRoot().toPath().resolve("manifest");
+      try (ResultWriter writer = new ResultWriter(manifest)) {
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+          writer.write(entry.getValue(), entry.getKey());
+        }
+      }
+      final Path snapshot = folder.getRoot().toPath().resolve("converted");
+      SnapshotWriter.convert(manifest, snapshot);
+      Assert.assertTrue(SnapshotReader.isSnapshot(snapshot));
+      Assert.assertFalse(SnapshotReader.isSnapshot(manifest));
+      check(entries, snapshot);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test07_wrongHashLength() throws IOException {
+      new SnapshotWriter(HASH_LENGTH).add("a", new byte[HASH_LENGTH + 1]);
+    }
+
+    @Test(expected = IOException.class)
+    public void test08_notSnapshot() throws IOException {
+      final Path file = folder.newFile().toPath();
+      Files.write(file, "not a snapshot at all, just some text".getBytes(StandardCharsets.UTF_8));
+      SnapshotReader.open(file);
+    }
+
+    private Path test(final Map<String, byte[]> entries, final long budget) throws IOException {
+      final Path snapshot = folder.newFile().toPath();
+      final SnapshotWriter writer = new SnapshotWriter(HASH_LENGTH, folder.getRoot().toPath(), budget);
+      for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+        writer.add(entry.getKey(), entry.getValue());
+      }
+      writer.write(snapshot);
+      check(entries, snapshot);
+      return snapshot;
+    }
+
+    private static void check(final Map<String, byte[]> entries, final Path snapshot) throws IOException {
+      final TreeMap<byte[], byte[]> expected = new TreeMap<>(SnapshotWriter::compare);
+      for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+        expected.put(entry.getKey().getBytes(StandardCharsets.UTF_8), entry.getValue());
+      }
+
+      final SnapshotReader reader = SnapshotReader.open(snapshot);
+      Assert.assertEquals(expected.size(), reader.size());
+      final Map<String, List<String>> byHash = new LinkedHashMap<>();
+      int index = 0;
+      for (Map.Entry<byte[], byte[]> entry : expected.entrySet()) {
+        final String path = new String(entry.getKey(), StandardCharsets.UTF_8);
+        Assert.assertEquals(path, reader.getPath(index));
+        Assert.assertArrayEquals(path, entry.getValue(), reader.getHash(index));
+        Assert.assertEquals(path, index, reader.find(entry.getKey()));
+        Assert.assertArrayEquals(path, entry.getValue(), reader.getHash(path));
+        Assert.assertNull(path, reader.getHash(path + "/missing"));
+        byHash.computeIfAbsent(Arrays.toString(entry.getValue()), key -> new ArrayList<>()).add(path);
+        index++;
+      }
+      for (Map.Entry<byte[], byte[]> entry : expected.entrySet()) {
+        Assert.assertEquals(byHash.get(Arrays.toString(entry.getValue())), reader.getPaths(entry.getValue()));
+      }
+      Assert.assertEquals(-1, reader.find(new byte[0]));
+    }
+
+    /**
+     * @return entries with shared prefixes, non-ASCII and long paths and repeated hashes
+     */
+    private static Map<String, byte[]> randomEntries(final int count) {
+      final Map<String, byte[]> entries = new LinkedHashMap<>();
+      while (entries.size() < count) {
+        final StringBuilder path = new StringBuilder();
+        for (int depth = RANDOM.nextInt(6); depth >= 0; depth--) {
+          path.append('/').append(PARTS[RANDOM.nextInt(PARTS.length)]);
+          if (RANDOM.nextInt(20) == 0) {
+            for (int i = RANDOM.nextInt(300); i >= 0; i--) {
+              path.append((char) ('a' + RANDOM.nextInt(26)));
+            }
+          }
+        }
+        path.append('/').append(RANDOM.nextInt(count));
+        entries.put(path.toString(), randomHash(count / 4 + 1));
+      }
+      return entries;
+    }
+
+    private static byte[] randomHash(final int distinct) {
+      final byte[] hash = new byte[HASH_LENGTH];
+      final int value = RANDOM.nextInt(distinct);
+      for (int i = 0; i < Integer.BYTES; i++) {
+        hash[HASH_LENGTH - 1 - i] = (byte) (value >>> (i * Byte.SIZE));
+      }
+      return hash;
+    }
+}